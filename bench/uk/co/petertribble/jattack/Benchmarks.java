@@ -0,0 +1,828 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Microbenchmarks for the hot paths of the game, run with "./build bench".
+ * Each benchmark is run over a range of board sizes and board types, in a
+ * fresh JVM for each so that one doesn't affect the JIT for another, with
+ * a number of warmup iterations followed by measured iterations, and the
+ * average time per operation reported along with its standard deviation.
+ *
+ * Benchmarks that need to start from a known position reset the board
+ * as part of each operation; the setBoard benchmark measures that reset
+ * on its own so it can be subtracted. The swap benchmarks work on a
+ * board with no runs, where each swap undoes the one before, while the
+ * play benchmark runs a game in the steady state, ticking the clock
+ * between swaps that make runs and set off cascades, and stepping the
+ * board up when there's nothing to swap. The envstep benchmark steps
+ * ENV_BOARDS boards with random actions in each operation, and always
+ * uses array boards.
+ *
+ * The bytes allocated per operation can also be measured, by the
+ * thread's allocation counter, and the game, input included, is
+ * expected not to allocate anything once it's running, so that the
+ * garbage collector never has to interrupt play. Allocation is measured
+ * over several windows of operations and the smallest taken, so that
+ * the odd allocation made by the JVM on the benchmark's thread doesn't
+ * count against it.
+ */
+public final class Benchmarks {
+
+    /**
+     * The board sizes to run, as columns x rows. Override with -s.
+     */
+    private static final String DEFAULT_SIZES = "6x9,16x48,64x256";
+    /**
+     * The board types to run. Override with -b.
+     */
+    private static final String DEFAULT_TYPES = "array,bits";
+    /**
+     * The number of operations run between checks of the clock.
+     */
+    private static final int BATCH = 16;
+    /**
+     * The number of operations in each window over which allocation is
+     * measured.
+     */
+    private static final int ALLOC_OPS = 10000;
+    /**
+     * The most windows of ALLOC_OPS operations to measure allocation
+     * over, taking the smallest.
+     */
+    private static final int ALLOC_WINDOWS = 5;
+    /**
+     * The seed for every game, so that each run sees the same cells.
+     */
+    private static final long SEED = 1L;
+    /**
+     * The number of ticks between swaps in the play benchmark.
+     */
+    private static final int PLAY_TICKS = 16;
+    /**
+     * The number of boards stepped together by the envstep benchmark.
+     */
+    private static final int ENV_BOARDS = 64;
+    /**
+     * Whether to measure the memory allocated by each benchmark, and
+     * whether to fail if any is.
+     */
+    private static final int ALLOC_NONE = 0;
+    private static final int ALLOC_REPORT = 1;
+    private static final int ALLOC_ZERO = 2;
+    /**
+     * The flag passed to a forked JVM to run a single benchmark.
+     */
+    private static final String CHILD = "-child";
+    /**
+     * Added to a benchmark's name on the line reporting its allocation.
+     */
+    private static final String ALLOC_SUFFIX = ":alloc";
+    /**
+     * The width of the benchmark column in the results, so that the
+     * columns line up whatever the benchmarks are called.
+     */
+    private static final int NAME_WIDTH = nameWidth();
+
+    /**
+     * Somewhere for results to go, so the work can't be optimized away.
+     */
+    private static volatile int sink;
+
+    private Benchmarks() {
+    }
+
+    /**
+     * A single benchmark, set up afresh for each board size.
+     */
+    abstract static class Bench {
+
+	/**
+	 * The name of this benchmark.
+	 */
+	private final String name;
+	/**
+	 * The number of games the operations have started, as starting a
+	 * game isn't held to allocating nothing.
+	 */
+	int games;
+
+	Bench(final String nname) {
+	    name = nname;
+	}
+
+	String getName() {
+	    return name;
+	}
+
+	/**
+	 * Prepare to run at the given board size.
+	 *
+	 * @param ncolumns the number of columns
+	 * @param nrows the number of rows
+	 * @param btype the type of board to store the cells in
+	 */
+	abstract void setup(int ncolumns, int nrows, BoardType btype);
+
+	/**
+	 * Run one operation.
+	 *
+	 * @return a value derived from the work done
+	 */
+	abstract int op();
+    }
+
+    /*
+     * A full board with no runs anywhere. Horizontal neighbours differ by
+     * one and vertical neighbours by two, modulo the number of colours.
+     */
+    static int[][] quietBoard(final int ncolumns, final int nrows) {
+	int[][] b = new int[ncolumns][nrows];
+	for (int i = 0; i < ncolumns; i++) {
+	    for (int j = 0; j < nrows; j++) {
+		b[i][j] = 1 + (i + 2 * j) % GameEngine.NCOLOURS;
+	    }
+	}
+	return b;
+    }
+
+    /*
+     * A full board where every row is a horizontal run, in alternating
+     * colours, so the whole board clears in one long cascade.
+     */
+    static int[][] hstripeBoard(final int ncolumns, final int nrows) {
+	int[][] b = new int[ncolumns][nrows];
+	for (int i = 0; i < ncolumns; i++) {
+	    for (int j = 0; j < nrows; j++) {
+		b[i][j] = 1 + j % 2;
+	    }
+	}
+	return b;
+    }
+
+    /*
+     * A full board where every column is a vertical run, in alternating
+     * colours.
+     */
+    static int[][] vstripeBoard(final int ncolumns, final int nrows) {
+	int[][] b = new int[ncolumns][nrows];
+	for (int i = 0; i < ncolumns; i++) {
+	    for (int j = 0; j < nrows; j++) {
+		b[i][j] = 1 + i % 2;
+	    }
+	}
+	return b;
+    }
+
+    /*
+     * The engine benchmarks, which measure the rules on their own.
+     */
+    abstract static class EngineBench extends Bench {
+
+	/**
+	 * The engine under test.
+	 */
+	GameEngine engine;
+	/**
+	 * The board to reset to, if needed.
+	 */
+	int[][] board;
+
+	EngineBench(final String nname) {
+	    super(nname);
+	}
+
+	@Override
+	void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+	    engine = new GameEngine(ncolumns, nrows, btype);
+	    engine.newGame(SEED);
+	    board = quietBoard(ncolumns, nrows);
+	}
+
+	/*
+	 * Start a new game if the last one is over.
+	 */
+	void restart() {
+	    if (!engine.isActive()) {
+		engine.newGame(SEED);
+		newGame();
+		games++;
+	    }
+	}
+
+	/*
+	 * Do anything else needed when a new game starts.
+	 */
+	void newGame() {
+	}
+    }
+
+    /*
+     * The panel benchmarks, which render or take input through a GamePanel
+     * with its loop stopped.
+     */
+    abstract static class PanelBench extends EngineBench {
+
+	/**
+	 * The panel under test.
+	 */
+	GamePanel gpanel;
+
+	PanelBench(final String nname) {
+	    super(nname);
+	}
+
+	@Override
+	void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+	    gpanel = new GamePanel(new InfoPanel(), ncolumns, nrows, btype);
+	    gpanel.stopLoop();
+	    gpanel.setSize(gpanel.getPreferredSize());
+	    engine = gpanel.getEngine();
+	    // a recording grows with the game, so leave it out to measure
+	    // just the panel
+	    engine.setRecording(false);
+	    gpanel.newGame(SEED);
+	    gpanel.stopLoop();
+	    board = quietBoard(ncolumns, nrows);
+	    engine.setBoard(board, 0);
+	    engine.checkAll();
+	    gpanel.sync();
+	}
+
+	@Override
+	void newGame() {
+	    // show the new game straight away
+	    gpanel.sync();
+	}
+    }
+
+    /*
+     * The width of the longest name in the benchmark column, including
+     * the heading, allowing for the allocation suffix.
+     */
+    private static int nameWidth() {
+	int width = "Benchmark".length();
+	for (Bench b : allBenchmarks()) {
+	    width = Math.max(width,
+			     b.getName().length() + ALLOC_SUFFIX.length());
+	}
+	return width;
+    }
+
+    private static List<Bench> allBenchmarks() {
+	List<Bench> benches = new ArrayList<>();
+	benches.add(new EngineBench("step") {
+	    @Override
+	    int op() {
+		engine.step();
+		restart();
+		return engine.getPartrow();
+	    }
+	});
+	benches.add(new EngineBench("tick") {
+	    @Override
+	    int op() {
+		engine.tick();
+		restart();
+		return engine.getPartrow();
+	    }
+	});
+	benches.add(new EngineBench("hint") {
+	    @Override
+	    int op() {
+		engine.step();
+		restart();
+		return engine.getHint();
+	    }
+	});
+	benches.add(new EngineBench("checkAll") {
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		engine.setBoard(board, 0);
+	    }
+	    @Override
+	    int op() {
+		engine.markAllDirty();
+		engine.checkAll();
+		return engine.getScore();
+	    }
+	});
+	benches.add(new EngineBench("shuffleDown") {
+	    private int col;
+	    @Override
+	    int op() {
+		col++;
+		if (col == engine.getColumns()) {
+		    col = 0;
+		}
+		engine.shuffleDown(col, engine.getRows() - 1);
+		return engine.getCell(col, 1);
+	    }
+	});
+	benches.add(new EngineBench("setBoard") {
+	    @Override
+	    int op() {
+		engine.setBoard(board, 0);
+		return engine.getToprow();
+	    }
+	});
+	benches.add(new EngineBench("clearHmatch") {
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		board = hstripeBoard(ncolumns, nrows);
+	    }
+	    @Override
+	    int op() {
+		engine.setBoard(board, 0);
+		engine.checkAll();
+		return engine.getScore();
+	    }
+	});
+	benches.add(new EngineBench("clearVmatch") {
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		board = vstripeBoard(ncolumns, nrows);
+	    }
+	    @Override
+	    int op() {
+		engine.setBoard(board, 0);
+		engine.checkAll();
+		return engine.getScore();
+	    }
+	});
+	benches.add(new EngineBench("swap") {
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		engine.setBoard(board, 0);
+		engine.checkAll();
+	    }
+	    @Override
+	    int op() {
+		// on a quiet board this swap never matches, so each
+		// operation undoes the previous one
+		engine.swap(0, 1, engine.getRows() - 1);
+		return engine.getCell(0, engine.getRows() - 1);
+	    }
+	});
+	benches.add(new EngineBench("play") {
+	    @Override
+	    int op() {
+		for (int k = 0; k < PLAY_TICKS; k++) {
+		    engine.tick();
+		}
+		// the hinted swap always makes a run, and the cells falling
+		// into its place often make more; with nothing to swap, step
+		// up the board as a player would to bring in more cells
+		int hint = engine.getHint();
+		if (hint >= 0) {
+		    int col = hint % engine.getColumns();
+		    engine.swap(col, col + 1, hint / engine.getColumns());
+		} else {
+		    engine.step();
+		}
+		restart();
+		return engine.getCombo();
+	    }
+	});
+	benches.add(new PanelBench("mousePressed") {
+	    private MouseEvent first;
+	    private MouseEvent second;
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		int y = (nrows - 1) * GameEngine.ROWSTEPS
+		    + GameEngine.ROWSTEPS / 2;
+		first = new MouseEvent(gpanel, MouseEvent.MOUSE_PRESSED, 0L, 0,
+				GameEngine.ROWSTEPS / 2, y, 1, false);
+		second = new MouseEvent(gpanel, MouseEvent.MOUSE_PRESSED, 0L, 0,
+				GameEngine.ROWSTEPS * 3 / 2, y, 1, false);
+	    }
+	    @Override
+	    int op() {
+		gpanel.mousePressed(first);
+		gpanel.mousePressed(second);
+		return engine.getCell(0, engine.getRows() - 1);
+	    }
+	});
+	benches.add(new PanelBench("select") {
+	    private MouseEvent[] clicks;
+	    private int next;
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		// clicks on cells that aren't neighbours, so never swap
+		clicks = new MouseEvent[nrows - 1];
+		for (int j = 0; j < clicks.length; j++) {
+		    clicks[j] = new MouseEvent(gpanel,
+				MouseEvent.MOUSE_PRESSED, 0L, 0,
+				(j % 2) * 2 * GameEngine.ROWSTEPS + 1,
+				j * GameEngine.ROWSTEPS + 1, 1, false);
+		}
+	    }
+	    @Override
+	    int op() {
+		next++;
+		if (next == clicks.length) {
+		    next = 0;
+		}
+		gpanel.mousePressed(clicks[next]);
+		return next;
+	    }
+	});
+	benches.add(new PanelBench("paint") {
+	    private Graphics2D g2;
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		Dimension d = gpanel.getPreferredSize();
+		BufferedImage img = new BufferedImage(d.width, d.height,
+					BufferedImage.TYPE_INT_RGB);
+		g2 = img.createGraphics();
+	    }
+	    @Override
+	    int op() {
+		gpanel.paint(g2);
+		return engine.getToprow();
+	    }
+	});
+	benches.add(new PanelBench("scroll") {
+	    private Graphics2D g2;
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		super.setup(ncolumns, nrows, btype);
+		Dimension d = gpanel.getPreferredSize();
+		BufferedImage img = new BufferedImage(d.width, d.height,
+					BufferedImage.TYPE_INT_RGB);
+		g2 = img.createGraphics();
+	    }
+	    @Override
+	    int op() {
+		gpanel.step();
+		restart();
+		gpanel.paint(g2);
+		return engine.getPartrow();
+	    }
+	});
+	benches.add(new Bench("envstep") {
+	    private VectorEnv env;
+	    private int[] actions;
+	    private float[] rewards;
+	    private boolean[] dones;
+	    private ByteBuffer obs;
+	    private SplitMix random;
+	    @Override
+	    void setup(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+		env = new VectorEnv(ENV_BOARDS, ncolumns, nrows, SEED);
+		actions = new int[ENV_BOARDS];
+		rewards = new float[ENV_BOARDS];
+		dones = new boolean[ENV_BOARDS];
+		obs = ByteBuffer.allocateDirect(ENV_BOARDS
+					* env.getObservationSize());
+		random = new SplitMix(SEED);
+		env.reset(obs);
+	    }
+	    @Override
+	    int op() {
+		for (int b = 0; b < ENV_BOARDS; b++) {
+		    actions[b] = random.nextInt(env.getActions());
+		}
+		env.step(actions, rewards, dones, obs);
+		return obs.get(0);
+	    }
+	});
+	return benches;
+    }
+
+    /*
+     * Run the benchmark for the given time, returning the average time
+     * per operation in nanoseconds.
+     */
+    private static double measure(final Bench b, final long millis) {
+	long ops = 0;
+	int result = 0;
+	long start = System.nanoTime();
+	long deadline = start + millis * 1000000L;
+	long now;
+	do {
+	    for (int k = 0; k < BATCH; k++) {
+		result += b.op();
+	    }
+	    ops += BATCH;
+	    now = System.nanoTime();
+	} while (now < deadline);
+	sink += result;
+	return (double) (now - start) / ops;
+    }
+
+    /*
+     * Find the average number of bytes allocated by this thread for each
+     * operation of the benchmark. The JVM itself, or the counter, can
+     * allocate on this thread now and again, which isn't the
+     * benchmark's doing, so the operations are run in several windows
+     * and the smallest average is taken: anything the benchmark
+     * allocates shows up in every window. Reading the counter may
+     * allocate, so the cost of that is measured first and taken off,
+     * which also gives the reads time to be compiled before they're
+     * relied on.
+     */
+    private static double allocated(final Bench b) {
+	com.sun.management.ThreadMXBean mx =
+	    (com.sun.management.ThreadMXBean)
+	    ManagementFactory.getThreadMXBean();
+	if (!mx.isThreadAllocatedMemorySupported()) {
+	    bailOut("Unable to measure allocation!");
+	}
+	long id = Thread.currentThread().getId();
+	long overhead = Long.MAX_VALUE;
+	for (int k = 0; k < ALLOC_OPS; k++) {
+	    long start = mx.getThreadAllocatedBytes(id);
+	    overhead = Math.min(overhead,
+				mx.getThreadAllocatedBytes(id) - start);
+	}
+	double least = Double.MAX_VALUE;
+	for (int w = 0; w < ALLOC_WINDOWS && least > 0.0; w++) {
+	    least = Math.min(least, allocatedWindow(b, mx, id, overhead));
+	}
+	return least;
+    }
+
+    /*
+     * Run the benchmark for a fixed number of operations, returning the
+     * average number of bytes allocated by this thread per operation,
+     * less the cost of reading the counter. Operations that end one game
+     * and start another are left out.
+     */
+    private static double allocatedWindow(final Bench b,
+			final com.sun.management.ThreadMXBean mx, final long id,
+			final long overhead) {
+	long bytes = 0;
+	int ops = 0;
+	int result = 0;
+	for (int k = 0; k < ALLOC_OPS; k++) {
+	    int games = b.games;
+	    long start = mx.getThreadAllocatedBytes(id);
+	    result += b.op();
+	    long used = mx.getThreadAllocatedBytes(id) - start - overhead;
+	    if (b.games == games) {
+		bytes += used;
+		ops++;
+	    }
+	}
+	sink += result;
+	return ops == 0 ? 0.0 : (double) bytes / ops;
+    }
+
+    private static void run(final Bench b, final String size,
+			    final BoardType btype, final int warmups,
+			    final int iterations, final long millis,
+			    final int alloc) {
+	String[] dims = size.split("x");
+	b.setup(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]), btype);
+	for (int i = 0; i < warmups; i++) {
+	    measure(b, millis);
+	}
+	double[] scores = new double[iterations];
+	double mean = 0.0;
+	for (int i = 0; i < iterations; i++) {
+	    scores[i] = measure(b, millis);
+	    mean += scores[i];
+	}
+	mean /= iterations;
+	double var = 0.0;
+	for (double score : scores) {
+	    var += (score - mean) * (score - mean);
+	}
+	double sd = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0.0;
+	System.out.println(String.format(Locale.ROOT, //NOPMD
+			"%-" + NAME_WIDTH
+			+ "s %10s %7s  avgt %4d %14.3f +- %12.3f  ns/op",
+			b.getName(), size,
+			btype.name().toLowerCase(Locale.ROOT), iterations, mean,
+			sd));
+	if (alloc != ALLOC_NONE) {
+	    double bytes = allocated(b);
+	    System.out.println(String.format(Locale.ROOT, //NOPMD
+			"%-" + NAME_WIDTH
+			+ "s %10s %7s  avgt %4d %14.3f   %12s  B/op",
+			b.getName() + ALLOC_SUFFIX, size,
+			btype.name().toLowerCase(Locale.ROOT), 1, bytes, ""));
+	    if (alloc == ALLOC_ZERO && bytes > 0.0) {
+		bailOut("Benchmark " + b.getName() + " allocated memory!");
+	    }
+	}
+    }
+
+    /*
+     * Run a single benchmark in a new JVM, which reports its own result.
+     */
+    private static void fork(final String name, final String size,
+			     final BoardType btype, final int warmups,
+			     final int iterations, final int millis,
+			     final int alloc) {
+	List<String> cmd = new ArrayList<>();
+	cmd.add(System.getProperty("java.home") + File.separator + "bin"
+		+ File.separator + "java");
+	cmd.add("-Djava.awt.headless=true");
+	cmd.add("-cp");
+	cmd.add(System.getProperty("java.class.path"));
+	cmd.add(Benchmarks.class.getName());
+	cmd.add(CHILD);
+	cmd.add("-w");
+	cmd.add(Integer.toString(warmups));
+	cmd.add("-i");
+	cmd.add(Integer.toString(iterations));
+	cmd.add("-t");
+	cmd.add(Integer.toString(millis));
+	cmd.add("-s");
+	cmd.add(size);
+	cmd.add("-b");
+	cmd.add(btype.name());
+	if (alloc == ALLOC_REPORT) {
+	    cmd.add("-a");
+	} else if (alloc == ALLOC_ZERO) {
+	    cmd.add("-z");
+	}
+	cmd.add(name);
+	try {
+	    Process p = new ProcessBuilder(cmd).inheritIO().start();
+	    if (p.waitFor() != 0) {
+		bailOut("Benchmark " + name + " failed!");
+	    }
+	} catch (IOException ex) {
+	    bailOut("Unable to fork benchmark " + name + "!");
+	} catch (InterruptedException ex) {
+	    Thread.currentThread().interrupt();
+	    bailOut("Interrupted!");
+	}
+    }
+
+    private static void bailOut(final String s) {
+	System.err.println(s); //NOPMD
+	System.exit(1);
+    }
+
+    private static int intArg(final String[] args, final int i) {
+	if (i >= args.length) {
+	    bailOut("Expecting an argument to " + args[i - 1] + "!");
+	}
+	try {
+	    return Integer.parseInt(args[i]);
+	} catch (NumberFormatException ex) {
+	    bailOut("Invalid argument to " + args[i - 1] + "!");
+	}
+	return 0;
+    }
+
+    /**
+     * Run the benchmarks. Options are -w for the number of warmup
+     * iterations, -i for the number of measured iterations, -t for the
+     * time of each iteration in milliseconds, -f for the number of JVMs
+     * to fork for each benchmark, or 0 to run them all in this one, -s
+     * for a comma separated list of board sizes such as 6x9,64x256, and
+     * -b for a comma separated list of board types from array and bits.
+     * With -a, the bytes allocated by each operation are also reported,
+     * and with -z any benchmark that allocates fails. Any remaining
+     * arguments name the benchmarks to run, otherwise all are run.
+     *
+     * @param args the command line arguments.
+     */
+    public static void main(final String[] args) {
+	int warmups = 3;
+	int iterations = 5;
+	int millis = 1000;
+	int forks = 1;
+	boolean child = false;
+	int alloc = ALLOC_NONE;
+	String sizes = DEFAULT_SIZES;
+	String types = DEFAULT_TYPES;
+	List<String> names = new ArrayList<>();
+	int i = 0;
+	while (i < args.length) {
+	    if ("-w".equals(args[i])) {
+		++i;
+		warmups = intArg(args, i);
+	    } else if ("-i".equals(args[i])) {
+		++i;
+		iterations = intArg(args, i);
+	    } else if ("-f".equals(args[i])) {
+		++i;
+		forks = intArg(args, i);
+	    } else if (CHILD.equals(args[i])) {
+		child = true;
+		forks = 0;
+	    } else if ("-a".equals(args[i])) {
+		alloc = Math.max(alloc, ALLOC_REPORT);
+	    } else if ("-z".equals(args[i])) {
+		alloc = ALLOC_ZERO;
+	    } else if ("-t".equals(args[i])) {
+		++i;
+		millis = intArg(args, i);
+	    } else if ("-s".equals(args[i])) {
+		++i;
+		if (i >= args.length) {
+		    bailOut("Expecting an argument to -s!");
+		}
+		sizes = args[i];
+	    } else if ("-b".equals(args[i])) {
+		++i;
+		if (i >= args.length) {
+		    bailOut("Expecting an argument to -b!");
+		}
+		types = args[i];
+	    } else {
+		names.add(args[i]);
+	    }
+	    ++i;
+	}
+	if (iterations < 1) {
+	    bailOut("Need at least one iteration!");
+	}
+	for (String size : sizes.split(",")) {
+	    if (!size.matches("\\d+x\\d+")) {
+		bailOut("Invalid size " + size + "!");
+	    }
+	}
+	List<BoardType> btypes = new ArrayList<>();
+	for (String type : types.split(",")) {
+	    try {
+		btypes.add(BoardType.valueOf(type.toUpperCase(Locale.ROOT)));
+	    } catch (IllegalArgumentException ex) {
+		bailOut("Invalid board type " + type + "!");
+	    }
+	}
+	if (!child) {
+	    System.out.println(String.format(Locale.ROOT, //NOPMD
+			"%-" + NAME_WIDTH
+			+ "s %10s %7s  Mode  Cnt %14s   %12s  Units",
+			"Benchmark", "(size)", "(board)", "Score", "StdDev"));
+	}
+	for (Bench b : allBenchmarks()) {
+	    if (names.isEmpty() || names.contains(b.getName())) {
+		for (String size : sizes.split(",")) {
+		    int ncolumns = Integer.parseInt(size.split("x")[0]);
+		    for (BoardType btype : btypes) {
+			if (btype != BoardType.BITS
+				|| ncolumns <= BitBoard.MAX_COLUMNS) {
+			    for (int f = 0; f < forks; f++) {
+				fork(b.getName(), size, btype, warmups,
+				     iterations, millis, alloc);
+			    }
+			    if (forks == 0) {
+				run(b, size, btype, warmups, iterations,
+				    millis, alloc);
+			    }
+			}
+		    }
+		}
+	    }
+	}
+	if (sink == 42) {
+	    System.out.println(); //NOPMD
+	}
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A canvas that a GamePanel is drawn onto actively, by a dedicated thread
+ * at a fixed frame rate, using page flipping where available, rather than
+ * waiting for Swing to ask for it to be painted. Frames whose time passes
+ * before they can be drawn are skipped, and counted as dropped.
+ */
+final class ActiveRenderer extends Canvas implements Runnable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * How often the count of dropped frames is reported, in nanoseconds.
+     */
+    private static final long REPORT_NANOS = 1_000_000_000L;
+
+    /**
+     * The panel being drawn.
+     */
+    private final transient GamePanel gpanel;
+    /**
+     * The interval between frames, in nanoseconds.
+     */
+    private final long period;
+    /**
+     * The thread drawing the frames, null if stopped.
+     */
+    private transient volatile Thread thread;
+
+    /**
+     * Create a canvas for a panel to be drawn on.
+     *
+     * @param ngpanel the panel to draw
+     * @param fps the number of frames to draw per second
+     */
+    ActiveRenderer(final GamePanel ngpanel, final int fps) {
+	gpanel = ngpanel;
+	period = 1_000_000_000L / fps;
+	setIgnoreRepaint(true);
+    }
+
+    @Override
+    public void addNotify() {
+	super.addNotify();
+	createBufferStrategy(2);
+	Thread t = new Thread(this, "jattack-render");
+	t.setDaemon(true);
+	thread = t;
+	t.start();
+    }
+
+    @Override
+    public void removeNotify() {
+	Thread t = thread;
+	thread = null;
+	if (t != null) {
+	    LockSupport.unpark(t);
+	    try {
+		t.join();
+	    } catch (InterruptedException ie) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+	super.removeNotify();
+    }
+
+    @Override
+    public void paint(final Graphics g) {
+	/* Drawn by the render thread. */
+    }
+
+    @Override
+    public void update(final Graphics g) {
+	/* Drawn by the render thread. */
+    }
+
+    @Override
+    public void run() {
+	Thread me = Thread.currentThread();
+	BufferStrategy bs = getBufferStrategy();
+	long dropped = 0;
+	long reported = -1;
+	long next = System.nanoTime();
+	long report = next;
+	while (thread == me) {
+	    gpanel.refresh();
+	    do {
+		boolean drawn;
+		do {
+		    Graphics g = bs.getDrawGraphics();
+		    try {
+			drawn = gpanel.drawFrame(g);
+		    } finally {
+			g.dispose();
+		    }
+		} while (!drawn || bs.contentsRestored());
+		bs.show();
+	    } while (bs.contentsLost());
+	    Toolkit.getDefaultToolkit().sync();
+	    next += period;
+	    long now = System.nanoTime();
+	    if (now - next >= 0) {
+		// too late for the next frame, and maybe more
+		long missed = (now - next) / period + 1;
+		dropped += missed;
+		next += missed * period;
+	    }
+	    if (now - report >= 0 && dropped != reported) {
+		gpanel.droppedFrames(dropped);
+		reported = dropped;
+		report = now + REPORT_NANOS;
+	    }
+	    LockSupport.parkNanos(next - now);
+	}
+    }
+}
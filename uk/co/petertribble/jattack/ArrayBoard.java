@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Board held as a flat array with one byte for each cell. The rows are
+ * laid out one after another, so row j starts at index j * ncolumns and
+ * walking along a row walks through consecutive bytes.
+ */
+final class ArrayBoard extends Board {
+
+    /**
+     * An array to hold the cells.
+     */
+    private final byte[] cells;
+
+    ArrayBoard(final int nncolumns, final int nnrows) {
+	super(nncolumns, nnrows);
+	cells = new byte[ncolumns * nrows];
+    }
+
+    @Override
+    int get(final int i, final int j) {
+	return cells[j * ncolumns + i];
+    }
+
+    @Override
+    int put(final int i, final int j, final int v) {
+	int k = j * ncolumns + i;
+	int old = cells[k];
+	cells[k] = (byte) v;
+	return old;
+    }
+
+    @Override
+    void load(final int[][] src) {
+	for (int j = 0; j < nrows; j++) {
+	    int base = j * ncolumns;
+	    for (int i = 0; i < ncolumns; i++) {
+		cells[base + i] = (byte) src[i][j];
+	    }
+	}
+	recount();
+    }
+
+    @Override
+    void load(final byte[] src) {
+	System.arraycopy(src, 0, cells, 0, cells.length);
+	recount();
+    }
+
+    @Override
+    void copyTo(final byte[] dst) {
+	System.arraycopy(cells, 0, dst, 0, cells.length);
+    }
+
+    @Override
+    void copyTo(final ByteBuffer dst, final int offset, final int first) {
+	// there's no absolute bulk put before Java 16, so move the position
+	// to use the relative one, which is far quicker than a byte at a time
+	int position = dst.position();
+	int start = first * ncolumns;
+	dst.position(offset);
+	dst.put(cells, start, cells.length - start);
+	dst.put(cells, 0, start);
+	dst.position(position);
+    }
+
+    @Override
+    int runRight(final int i, final int j) {
+	int base = j * ncolumns;
+	byte val = cells[base + i];
+	int imax = i + 1;
+	while (imax < ncolumns && cells[base + imax] == val) {
+	    imax++;
+	}
+	return imax;
+    }
+
+    @Override
+    int runLeft(final int i, final int j) {
+	int base = j * ncolumns;
+	byte val = cells[base + i];
+	int imin = i;
+	while (imin > 0 && cells[base + imin - 1] == val) {
+	    imin--;
+	}
+	return imin;
+    }
+
+    @Override
+    int nextHorizontal(final int i, final int j) {
+	int base = j * ncolumns;
+	for (int k = base + i; k < base + ncolumns - 2; k++) {
+	    byte val = cells[k];
+	    if (val != 0 && val == cells[k + 1] && val == cells[k + 2]) {
+		return k - base;
+	    }
+	}
+	return ncolumns;
+    }
+
+    @Override
+    int nextVertical(final int i, final int j0, final int j1, final int j2) {
+	int base0 = j0 * ncolumns;
+	int base1 = j1 * ncolumns;
+	int base2 = j2 * ncolumns;
+	for (int k = i; k < ncolumns; k++) {
+	    byte val = cells[base0 + k];
+	    if (val != 0 && val == cells[base1 + k]
+		    && val == cells[base2 + k]) {
+		return k;
+	    }
+	}
+	return ncolumns;
+    }
+}
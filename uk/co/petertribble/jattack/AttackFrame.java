@@ -25,11 +25,25 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import javax.swing.ImageIcon;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
+import javax.swing.JOptionPane;
+import javax.swing.JScrollPane;
 
 /**
  * The main Frame to display a Jattack game. Implements the menu bar and holds
@@ -48,9 +62,45 @@ public final class AttackFrame extends JFrame implements ActionListener {
      */
     private JMenuItem newItem;
     /**
-     * The panel holding the game.
+     * A menu item to have the game play itself.
+     */
+    private JCheckBoxMenuItem autoItem;
+    /**
+     * A menu item for Save Replay.
+     */
+    private JMenuItem saveItem;
+    /**
+     * A menu item for Open Replay.
+     */
+    private JMenuItem openItem;
+    /**
+     * The panel holding the game, null in a versus game.
      */
     private AttackPanel apanel;
+    /**
+     * The panel holding a versus game, null if there's a single game.
+     */
+    private VersusPanel vpanel;
+    /**
+     * The number of columns in the current panel.
+     */
+    private int columns;
+    /**
+     * The number of rows in the current panel.
+     */
+    private int rows;
+    /**
+     * The type of board used by the panel.
+     */
+    private final BoardType btype;
+    /**
+     * The frame rate for active rendering, 0 for none.
+     */
+    private final int fps;
+    /**
+     * Chooses files to save and open replays.
+     */
+    private JFileChooser chooser;
     /**
      * The default number of columns. Override with the -c cli flag.
      */
@@ -59,6 +109,10 @@ public final class AttackFrame extends JFrame implements ActionListener {
      * The default number of rows. Override with the -r cli flag.
      */
     private static final int DEFAULT_ROWS = 9;
+    /**
+     * The interval between reports when running a server, in seconds.
+     */
+    private static final int SERVER_INTERVAL = 10;
 
     /**
      * Create a Frame containing the game at the default size.
@@ -74,27 +128,128 @@ public final class AttackFrame extends JFrame implements ActionListener {
      * @param nrows the desired number of rows
      */
     public AttackFrame(final int ncolumns, final int nrows) {
+	this(ncolumns, nrows, BoardType.ARRAY);
+    }
+
+    /**
+     * Create a Frame containing the game at the requested size, choosing
+     * how the board is stored.
+     *
+     * @param ncolumns the desired number of rows
+     * @param nrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     */
+    public AttackFrame(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+	this(ncolumns, nrows, btype, 0);
+    }
+
+    /**
+     * Create a Frame containing the game at the requested size, choosing
+     * how the board is stored and how it is rendered.
+     *
+     * @param ncolumns the desired number of rows
+     * @param nrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     * @param fps the frame rate for active rendering, 0 for none
+     */
+    public AttackFrame(final int ncolumns, final int nrows,
+		       final BoardType btype, final int fps) {
 	super("JAttack");
+	columns = ncolumns;
+	rows = nrows;
+	this.btype = btype;
+	this.fps = fps;
+	addMenu();
+	apanel = new AttackPanel(ncolumns, nrows, btype, fps);
+	setContentPane(apanel);
+	display();
+    }
 
+    /**
+     * Create a Frame containing a versus game, with several boards of the
+     * requested size.
+     *
+     * @param ncolumns the desired number of columns on each board
+     * @param nrows the desired number of rows on each board
+     * @param btype the type of board to store the cells in
+     * @param nboards the number of boards, at least two
+     * @param human true if the first board is to be played with the
+     * mouse, false for bots to play every board
+     */
+    public AttackFrame(final int ncolumns, final int nrows,
+		       final BoardType btype, final int nboards,
+		       final boolean human) {
+	super("JAttack");
+	columns = ncolumns;
+	rows = nrows;
+	this.btype = btype;
+	fps = 0;
+	addMenu();
+	// there's no single game to save, or to replay into
+	saveItem.setEnabled(false);
+	openItem.setEnabled(false);
+	autoItem.setEnabled(human);
+	vpanel = new VersusPanel(nboards, ncolumns, nrows, btype, human);
+	setContentPane(new JScrollPane(vpanel));
+	display();
+    }
+
+    /*
+     * Create a Frame showing a game played on a server.
+     */
+    private AttackFrame(final RemoteGame remote) {
+	super("JAttack");
+	columns = remote.getColumns();
+	rows = remote.getRows();
+	btype = BoardType.ARRAY;
+	fps = 0;
+	addMenu();
+	// the server keeps the game to itself
+	autoItem.setEnabled(false);
+	saveItem.setEnabled(false);
+	openItem.setEnabled(false);
+	apanel = new AttackPanel(remote);
+	setContentPane(apanel);
+	display();
+    }
+
+    /*
+     * Create the menu bar.
+     */
+    private void addMenu() {
 	addWindowListener(new WindowExit());
 
 	JMenu jmf = new JMenu("File");
 	jmf.setMnemonic(KeyEvent.VK_F);
 	newItem = new JMenuItem("New Game", KeyEvent.VK_N);
 	newItem.addActionListener(this);
+	autoItem = new JCheckBoxMenuItem("Autoplay");
+	autoItem.setMnemonic(KeyEvent.VK_A);
+	autoItem.addActionListener(this);
+	saveItem = new JMenuItem("Save Replay...", KeyEvent.VK_S);
+	saveItem.addActionListener(this);
+	openItem = new JMenuItem("Open Replay...", KeyEvent.VK_O);
+	openItem.addActionListener(this);
 	exitItem = new JMenuItem("Exit", KeyEvent.VK_X);
 	exitItem.addActionListener(this);
 	jmf.add(newItem);
+	jmf.add(autoItem);
+	jmf.addSeparator();
+	jmf.add(saveItem);
+	jmf.add(openItem);
 	jmf.addSeparator();
 	jmf.add(exitItem);
 
 	JMenuBar jm = new JMenuBar();
 	jm.add(jmf);
 	setJMenuBar(jm);
+    }
 
-	apanel = new AttackPanel(ncolumns, nrows);
-	setContentPane(apanel);
-
+    /*
+     * Show the frame, at the size of its contents.
+     */
+    private void display() {
 	setIconImage(new ImageIcon(this.getClass().getClassLoader()
 				   .getResource("pixmaps/jattack.png"))
 		     .getImage());
@@ -102,6 +257,81 @@ public final class AttackFrame extends JFrame implements ActionListener {
 	setVisible(true);
     }
 
+    /**
+     * Start a new game, with the given seed.
+     *
+     * @param seed the seed for the cells in the new game
+     */
+    public void newGame(final long seed) {
+	if (vpanel != null) {
+	    vpanel.newGame(seed);
+	} else {
+	    apanel.newGame(seed);
+	}
+    }
+
+    /*
+     * Save the current game, or the one being replayed, to a file.
+     */
+    private void saveReplay() {
+	if (getChooser().showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+	    return;
+	}
+	File f = chooser.getSelectedFile();
+	try (OutputStream out = new BufferedOutputStream(
+		new FileOutputStream(f))) {
+	    apanel.saveRecording(out);
+	} catch (IOException ioe) {
+	    JOptionPane.showMessageDialog(this,
+			"Unable to save replay: " + ioe.getMessage(),
+			"Save Replay", JOptionPane.ERROR_MESSAGE);
+	}
+    }
+
+    /*
+     * Load a replay from a file and play it, resizing the game to match.
+     */
+    private void openReplay() {
+	if (getChooser().showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+	    return;
+	}
+	File f = chooser.getSelectedFile();
+	Recording recording;
+	try (InputStream in = new BufferedInputStream(
+		new FileInputStream(f))) {
+	    recording = Recording.read(in);
+	} catch (IOException ioe) {
+	    JOptionPane.showMessageDialog(this,
+			"Unable to read replay: " + ioe.getMessage(),
+			"Open Replay", JOptionPane.ERROR_MESSAGE);
+	    return;
+	}
+	if (btype == BoardType.BITS
+		&& recording.getColumns() > BitBoard.MAX_COLUMNS) {
+	    JOptionPane.showMessageDialog(this,
+			"Too many columns for this board type",
+			"Open Replay", JOptionPane.ERROR_MESSAGE);
+	    return;
+	}
+	if (recording.getColumns() != columns
+		|| recording.getRows() != rows) {
+	    columns = recording.getColumns();
+	    rows = recording.getRows();
+	    apanel = new AttackPanel(columns, rows, btype, fps);
+	    apanel.setAutoplay(autoItem.isSelected());
+	    setContentPane(apanel);
+	    pack();
+	}
+	apanel.replay(recording);
+    }
+
+    private JFileChooser getChooser() {
+	if (chooser == null) {
+	    chooser = new JFileChooser();
+	}
+	return chooser;
+    }
+
     class WindowExit extends WindowAdapter {
 	@Override
 	public void windowClosing(final WindowEvent we) {
@@ -114,8 +344,46 @@ public final class AttackFrame extends JFrame implements ActionListener {
 	if (exitItem.equals(e.getSource())) {
 	    System.exit(0);
 	} else if (newItem.equals(e.getSource())) {
-	    apanel.newGame();
+	    if (vpanel != null) {
+		vpanel.newGame();
+	    } else {
+		apanel.newGame();
+	    }
+	} else if (autoItem.equals(e.getSource())) {
+	    if (vpanel != null) {
+		vpanel.setAutoplay(autoItem.isSelected());
+	    } else {
+		apanel.setAutoplay(autoItem.isSelected());
+	    }
+	} else if (saveItem.equals(e.getSource())) {
+	    saveReplay();
+	} else if (openItem.equals(e.getSource())) {
+	    openReplay();
+	}
+    }
+
+    /*
+     * Host games for clients on the given port until the process is
+     * killed, reporting on the server at intervals. Only connections over
+     * loopback are accepted, unless an address to listen on is given.
+     */
+    private static void serve(final String bindhost, final int port,
+			      final BoardType type) {
+	int nthreads = Runtime.getRuntime().availableProcessors();
+	GameServer server = null;
+	try {
+	    InetAddress bindaddr = bindhost == null
+		? InetAddress.getLoopbackAddress()
+		: InetAddress.getByName(bindhost);
+	    server = new GameServer(new InetSocketAddress(bindaddr, port),
+				    nthreads, type);
+	} catch (IOException ioe) {
+	    bailOut("Unable to listen: " + ioe.getMessage());
 	}
+	server.start();
+	System.out.printf("Listening on port %d with %d threads%n",
+			  server.getPort(), nthreads);
+	server.monitor(SERVER_INTERVAL, 0, System.out);
     }
 
     private static void bailOut(final String s) {
@@ -125,7 +393,19 @@ public final class AttackFrame extends JFrame implements ActionListener {
 
     /**
      * Run a new JAttack game. Allows the number of rows to be
-     * specified with -r, and the number of columns with -c.
+     * specified with -r, and the number of columns with -c. The board
+     * may be stored as bitmasks, for up to 64 columns, with -b bits, or
+     * as an array with -b array, which is the default. The board is drawn
+     * actively at a given number of frames per second with -a fps. The
+     * first game can be repeated by giving its seed with -s seed. A
+     * versus game against bots, with a number of boards, is played with
+     * -v boards, and -w leaves bots to play every board.
+     *
+     * With -S port, runs a server hosting games for clients, rather than
+     * a game; see GameServer. It only listens on loopback, unless given
+     * an address to listen on with -S address:port, such as 0.0.0.0 for
+     * every interface. With -C host:port, the game is played on such a
+     * server, and the size given with -c and -r is asked for.
      *
      * @param args the command line arguments.
      */
@@ -134,6 +414,16 @@ public final class AttackFrame extends JFrame implements ActionListener {
 	    int i = 0;
 	    int chosenrows = DEFAULT_ROWS;
 	    int chosencolumns = DEFAULT_COLUMNS;
+	    BoardType chosentype = BoardType.ARRAY;
+	    int chosenfps = 0;
+	    boolean seeded = false;
+	    long chosenseed = 0L;
+	    int chosenboards = 1;
+	    boolean watch = false;
+	    String serverhost = null;
+	    int serverport = -1;
+	    String host = null;
+	    int hostport = 0;
 	    while (i < args.length) {
 		if ("-r".equals(args[i])) {
 		    ++i;
@@ -163,12 +453,147 @@ public final class AttackFrame extends JFrame implements ActionListener {
 		    } else {
 			bailOut("Expecting an argument to -c!");
 		    }
+		} else if ("-b".equals(args[i])) {
+		    ++i;
+		    if (i < args.length) {
+			if ("bits".equals(args[i])) {
+			    chosentype = BoardType.BITS;
+			} else if ("array".equals(args[i])) {
+			    chosentype = BoardType.ARRAY;
+			} else {
+			    bailOut("Invalid board type!");
+			}
+		    } else {
+			bailOut("Expecting an argument to -b!");
+		    }
+		} else if ("-a".equals(args[i])) {
+		    ++i;
+		    if (i < args.length) {
+			try {
+			    chosenfps = Integer.parseInt(args[i]);
+			} catch (NumberFormatException ex) {
+			    bailOut("Invalid frame rate!");
+			}
+			if (chosenfps < 1) {
+			    bailOut("Frame rate must be positive!");
+			}
+		    } else {
+			bailOut("Expecting an argument to -a!");
+		    }
+		} else if ("-s".equals(args[i])) {
+		    ++i;
+		    if (i < args.length) {
+			try {
+			    chosenseed = Long.parseLong(args[i]);
+			    seeded = true;
+			} catch (NumberFormatException ex) {
+			    bailOut("Invalid seed!");
+			}
+		    } else {
+			bailOut("Expecting an argument to -s!");
+		    }
+		} else if ("-v".equals(args[i])) {
+		    ++i;
+		    if (i < args.length) {
+			try {
+			    chosenboards = Integer.parseInt(args[i]);
+			} catch (NumberFormatException ex) {
+			    bailOut("Invalid number of boards!");
+			}
+			if (chosenboards < 2) {
+			    bailOut("Too few boards!");
+			}
+		    } else {
+			bailOut("Expecting an argument to -v!");
+		    }
+		} else if ("-w".equals(args[i])) {
+		    watch = true;
+		} else if ("-S".equals(args[i])) {
+		    ++i;
+		    if (i < args.length) {
+			int colon = args[i].lastIndexOf(':');
+			if (colon == 0) {
+			    bailOut("Expecting [address:]port for -S!");
+			}
+			if (colon > 0) {
+			    serverhost = args[i].substring(0, colon);
+			}
+			try {
+			    serverport = Integer.parseInt(
+				args[i].substring(colon + 1));
+			} catch (NumberFormatException ex) {
+			    bailOut("Invalid port!");
+			}
+			if (serverport < 0 || serverport > 65_535) {
+			    bailOut("Invalid port!");
+			}
+		    } else {
+			bailOut("Expecting an argument to -S!");
+		    }
+		} else if ("-C".equals(args[i])) {
+		    ++i;
+		    if (i < args.length) {
+			int colon = args[i].lastIndexOf(':');
+			if (colon < 1) {
+			    bailOut("Expecting host:port for -C!");
+			}
+			host = args[i].substring(0, colon);
+			try {
+			    hostport = Integer.parseInt(
+				args[i].substring(colon + 1));
+			} catch (NumberFormatException ex) {
+			    bailOut("Invalid port!");
+			}
+			if (hostport < 1 || hostport > 65_535) {
+			    bailOut("Invalid port!");
+			}
+		    } else {
+			bailOut("Expecting an argument to -C!");
+		    }
 		} else {
 		    break;
 		}
 		++i;
 	    }
-	    new AttackFrame(chosencolumns, chosenrows);
+	    if (chosentype == BoardType.BITS
+		    && chosencolumns > BitBoard.MAX_COLUMNS) {
+		bailOut("Too many columns for -b bits!");
+	    }
+	    if (watch && chosenboards < 2) {
+		bailOut("Can only watch a versus game!");
+	    }
+	    if (chosenfps > 0 && chosenboards > 1) {
+		bailOut("Versus games can't be drawn actively!");
+	    }
+	    if (serverport >= 0) {
+		serve(serverhost, serverport, chosentype);
+		return;
+	    }
+	    if (host != null) {
+		if (chosenboards > 1 || chosenfps > 0) {
+		    bailOut("Can't play versus or active games on a server!");
+		}
+		AttackFrame frame = null;
+		try {
+		    frame = new AttackFrame(RemoteGame.connect(
+			new InetSocketAddress(host, hostport),
+			chosencolumns, chosenrows));
+		} catch (IOException ioe) {
+		    bailOut("Unable to play on server: " + ioe.getMessage());
+		}
+		if (seeded) {
+		    frame.newGame(chosenseed);
+		}
+		return;
+	    }
+	    AttackFrame frame = chosenboards > 1
+		? new AttackFrame(chosencolumns, chosenrows, chosentype,
+				  chosenboards, !watch)
+		: new AttackFrame(chosencolumns, chosenrows, chosentype,
+				  chosenfps);
+	    if (seeded) {
+		frame.newGame(chosenseed);
+	    }
 	} else {
 	    new AttackFrame();
 	}
@@ -20,6 +20,8 @@
 
 package uk.co.petertribble.jattack;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import javax.swing.BoxLayout;
 import javax.swing.JPanel;
 
@@ -42,17 +44,122 @@ public final class AttackPanel extends JPanel {
      * @param nrows the desired number of rows
      */
     public AttackPanel(final int ncolumns, final int nrows) {
+	this(ncolumns, nrows, BoardType.ARRAY);
+    }
+
+    /**
+     * Create an AttackPanel of the requested size, choosing how the board
+     * is stored.
+     *
+     * @param ncolumns the desired number of rows
+     * @param nrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     */
+    public AttackPanel(final int ncolumns, final int nrows,
+		       final BoardType btype) {
+	this(ncolumns, nrows, btype, 0);
+    }
+
+    /**
+     * Create an AttackPanel of the requested size, choosing how the board
+     * is stored and how it is rendered.
+     *
+     * @param ncolumns the desired number of rows
+     * @param nrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     * @param fps the frame rate for active rendering, 0 for none
+     */
+    public AttackPanel(final int ncolumns, final int nrows,
+		       final BoardType btype, final int fps) {
+	setLayout(new BoxLayout(this, BoxLayout.LINE_AXIS));
+	InfoPanel ipanel = new InfoPanel();
+	gpanel = new GamePanel(ipanel, ncolumns, nrows, btype, fps);
+	add(gpanel);
+	add(ipanel);
+    }
+
+    /**
+     * Create an AttackPanel of the requested size, driven by a loop shared
+     * with other games.
+     *
+     * @param ncolumns the desired number of rows
+     * @param nrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     * @param shared the loop to drive the game
+     */
+    AttackPanel(final int ncolumns, final int nrows, final BoardType btype,
+		final SharedLoop shared) {
+	setLayout(new BoxLayout(this, BoxLayout.LINE_AXIS));
+	InfoPanel ipanel = new InfoPanel();
+	gpanel = new GamePanel(ipanel, ncolumns, nrows, btype, shared);
+	add(gpanel);
+	add(ipanel);
+    }
+
+    /**
+     * Create an AttackPanel showing a game played on a server.
+     *
+     * @param remote the game on the server
+     */
+    AttackPanel(final RemoteGame remote) {
 	setLayout(new BoxLayout(this, BoxLayout.LINE_AXIS));
 	InfoPanel ipanel = new InfoPanel();
-	gpanel = new GamePanel(ipanel, ncolumns, nrows);
+	gpanel = new GamePanel(ipanel, remote);
 	add(gpanel);
 	add(ipanel);
     }
 
+    /**
+     * Get the panel containing the game.
+     *
+     * @return the GamePanel for this game
+     */
+    GamePanel getGamePanel() {
+	return gpanel;
+    }
+
     /**
      * Request a new game.
      */
     public void newGame() {
 	gpanel.newGame();
     }
+
+    /**
+     * Request a new game, with the given seed.
+     *
+     * @param seed the seed for the cells in the new game
+     */
+    public void newGame(final long seed) {
+	gpanel.newGame(seed);
+    }
+
+    /**
+     * Play back a recorded game, which must be the same size as this panel.
+     *
+     * @param recording the recording to play back
+     */
+    public void replay(final Recording recording) {
+	gpanel.replay(recording);
+    }
+
+    /**
+     * Save a recording of the current game, or of the game being replayed.
+     *
+     * @param out where to write the recording
+     *
+     * @throws IOException if the recording can't be written
+     */
+    public void saveRecording(final OutputStream out) throws IOException {
+	gpanel.saveRecording(out);
+    }
+
+    /**
+     * Choose whether the game plays itself.
+     *
+     * @param auto true to have an AutoPlayer play the game
+     */
+    public void setAutoplay(final boolean auto) {
+	gpanel.setBot(auto ? new AutoPlayer() : null);
+    }
 }
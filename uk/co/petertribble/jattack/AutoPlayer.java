@@ -0,0 +1,406 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A bot that searches for its moves. Every possible swap of two
+ * neighbouring cells in a visible row is tried on a copy of the game,
+ * letting any runs clear and the cells above fall, and then the swaps
+ * possible after that, and so on to a given depth. Each position is
+ * valued by the points scored getting there, less a penalty for tall
+ * columns, and the bot makes the first swap of the best line, or none at
+ * all if no line beats standing still.
+ *
+ * The first swaps are shared out over a fork/join pool, and positions
+ * already valued are remembered in a transposition table keyed by a
+ * Zobrist hash of the board, so the same position reached by different
+ * swaps is only valued once. Given a time budget, the bot searches one
+ * swap deep, then deeper as long as time allows, keeping the result of
+ * the deepest search that finished, or if not even the first did, the
+ * best of the swaps it got round to. Without one it always searches to
+ * its full depth, so plays the same way every time.
+ */
+public final class AutoPlayer implements Bot {
+
+    /**
+     * The default depth of search, in swaps.
+     */
+    public static final int DEFAULT_DEPTH = 3;
+    /**
+     * The default number of ticks between moves.
+     */
+    public static final int DEFAULT_INTERVAL = 50;
+    /**
+     * The penalty for each column is its height squared times this.
+     */
+    private static final int HEIGHT_WEIGHT = 2;
+    /**
+     * The penalty for the tallest column is its height squared times this.
+     */
+    private static final int DANGER_WEIGHT = 10;
+    /**
+     * The transposition table holds 2 to the power this many entries.
+     */
+    private static final int TABLE_BITS = 16;
+    /**
+     * Marks a search that ran out of time.
+     */
+    private static final int ABORTED = Integer.MIN_VALUE;
+    /**
+     * Searches for fewer first swaps than this aren't split further.
+     */
+    private static final int SPLIT = 4;
+
+    /**
+     * The greatest depth of search.
+     */
+    private final int depth;
+    /**
+     * The number of ticks between moves.
+     */
+    private final int interval;
+    /**
+     * The time allowed for each move in nanoseconds, 0 for no limit.
+     */
+    private final long budget;
+    /**
+     * The pool to search in, null to search on the calling thread.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Positions already valued.
+     */
+    private final TranspositionTable table =
+	new TranspositionTable(TABLE_BITS);
+    /**
+     * Each thread's space to search in.
+     */
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<>();
+    /**
+     * The random values for each value of each cell, by position.
+     */
+    private long[] zobrist = new long[0];
+    /**
+     * The first swaps for the current move, and their values.
+     */
+    private int[] rootMoves = new int[0];
+    private int[] rootValues = new int[0];
+
+    /**
+     * Create a bot for interactive play, searching in parallel and
+     * deciding each move within one tick of the game clock.
+     */
+    public AutoPlayer() {
+	this(DEFAULT_DEPTH, DEFAULT_INTERVAL, GameEngine.TICK_NANOS,
+	     ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create a bot that always searches to the given depth, on the
+     * calling thread, so that it plays the same way every time. Suited
+     * to headless simulations, where games rather than moves are run in
+     * parallel.
+     *
+     * @param ndepth the depth of search, in swaps
+     */
+    public AutoPlayer(final int ndepth) {
+	this(ndepth, DEFAULT_INTERVAL, 0L, null);
+    }
+
+    /**
+     * Create a bot.
+     *
+     * @param ndepth the greatest depth of search, in swaps
+     * @param ninterval the number of ticks between moves
+     * @param nbudget the time allowed for each move in nanoseconds, 0 for
+     * no limit
+     * @param npool the pool to search in, null to search on the calling
+     * thread
+     */
+    public AutoPlayer(final int ndepth, final int ninterval,
+		      final long nbudget, final ForkJoinPool npool) {
+	if (ndepth < 1) {
+	    throw new IllegalArgumentException("Depth must be positive");
+	}
+	depth = ndepth;
+	interval = ninterval;
+	budget = nbudget;
+	pool = npool;
+    }
+
+    @Override
+    public void play(final GameEngine engine) {
+	if (engine.getTicks() % interval == 0) {
+	    int move = chooseMove(engine);
+	    if (move >= 0) {
+		int ncolumns = engine.getColumns();
+		int i = move % ncolumns;
+		engine.swap(i, i + 1, (engine.getToprow() + move / ncolumns)
+			    % engine.getRows());
+	    }
+	}
+    }
+
+    /**
+     * Choose the best swap.
+     *
+     * @param engine the game to choose a swap for
+     *
+     * @return the swap, as position * columns + column of the left cell,
+     * or -1 if it's best not to move
+     */
+    int chooseMove(final GameEngine engine) {
+	prepare(engine);
+	int nmoves = moves(engine, rootMoves);
+	long deadline = budget > 0 ? System.nanoTime() + budget
+	    : Long.MAX_VALUE;
+	int best = -1;
+	for (int d = 1; d <= depth; d++) {
+	    Search search = new Search(engine, d, deadline, 0, nmoves);
+	    if (pool == null) {
+		search.compute();
+	    } else {
+		pool.invoke(search);
+	    }
+	    int dbest = -1;
+	    int bestValue = value(engine);
+	    boolean complete = true;
+	    for (int k = 0; k < nmoves; k++) {
+		if (rootValues[k] == ABORTED) {
+		    complete = false;
+		} else if (rootValues[k] > bestValue) {
+		    bestValue = rootValues[k];
+		    dbest = rootMoves[k];
+		}
+	    }
+	    // part of the shallowest search is better than nothing
+	    if (complete || d == 1) {
+		best = dbest;
+	    }
+	    if (!complete) {
+		break;
+	    }
+	}
+	return best;
+    }
+
+    /*
+     * Set up for a game of a new size.
+     */
+    private void prepare(final GameEngine engine) {
+	int ncells = engine.getColumns() * engine.getRows();
+	if (rootMoves.length != ncells) {
+	    rootMoves = new int[ncells];
+	    rootValues = new int[ncells];
+	    zobrist = new long[ncells * (GameEngine.NCOLOURS + 1)];
+	    SplitMix random = new SplitMix(ncells);
+	    for (int k = 0; k < zobrist.length; k++) {
+		zobrist[k] = random.nextLong();
+	    }
+	}
+    }
+
+    /*
+     * A thread's space to search in: a copy of the game to try moves on
+     * for each level of the search, and somewhere to list the moves.
+     */
+    private static final class Scratch {
+	final GameEngine[] engines;
+	final int[][] moves;
+
+	Scratch(final int ncolumns, final int nrows, final int ndepth) {
+	    engines = new GameEngine[ndepth];
+	    moves = new int[ndepth][ncolumns * nrows];
+	    for (int d = 0; d < ndepth; d++) {
+		engines[d] = new GameEngine(ncolumns, nrows);
+	    }
+	}
+    }
+
+    /*
+     * Get this thread's space to search in, made the first time and
+     * whenever the size of the game changes.
+     */
+    private Scratch scratch(final GameEngine engine) {
+	Scratch s = scratch.get();
+	if (s == null || s.engines[0].getColumns() != engine.getColumns()
+		|| s.engines[0].getRows() != engine.getRows()) {
+	    s = new Scratch(engine.getColumns(), engine.getRows(), depth);
+	    scratch.set(s);
+	}
+	return s;
+    }
+
+    /*
+     * List the swaps that would change something: neighbouring cells in
+     * a visible row that differ. Returns the number found.
+     */
+    private static int moves(final GameEngine engine, final int[] moves) {
+	int ncolumns = engine.getColumns();
+	int nrows = engine.getRows();
+	int nmoves = 0;
+	for (int n = 1; n < nrows; n++) {
+	    int j = (engine.getToprow() + n) % nrows;
+	    int left = engine.getCell(0, j);
+	    for (int i = 0; i < ncolumns - 1; i++) {
+		int right = engine.getCell(i + 1, j);
+		if (left != right) {
+		    moves[nmoves++] = n * ncolumns + i;
+		}
+		left = right;
+	    }
+	}
+	return nmoves;
+    }
+
+    /*
+     * Make a swap, given as position * columns + column, on a copy of a
+     * game.
+     */
+    private static void swap(final GameEngine copy, final GameEngine from,
+			     final int move) {
+	int ncolumns = from.getColumns();
+	int i = move % ncolumns;
+	copy.copyFrom(from);
+	copy.swap(i, i + 1, (from.getToprow() + move / ncolumns)
+		  % from.getRows());
+    }
+
+    /*
+     * The value of standing still: a penalty for tall columns, and
+     * especially for the tallest.
+     */
+    private static int value(final GameEngine engine) {
+	int sum = 0;
+	int max = 0;
+	for (int i = 0; i < engine.getColumns(); i++) {
+	    int h = engine.getHeight(i);
+	    sum += h * h;
+	    max = Math.max(max, h);
+	}
+	return -(HEIGHT_WEIGHT * sum + DANGER_WEIGHT * max * max);
+    }
+
+    /*
+     * A Zobrist hash of the board, counting rows from the top so that
+     * the same layout hashes the same however far the rows have rolled
+     * round.
+     */
+    private long hash(final GameEngine engine) {
+	int ncolumns = engine.getColumns();
+	int nrows = engine.getRows();
+	long h = 0L;
+	int k = 0;
+	for (int n = 0; n < nrows; n++) {
+	    int j = (engine.getToprow() + n) % nrows;
+	    for (int i = 0; i < ncolumns; i++) {
+		int val = engine.getCell(i, j);
+		if (val != 0) {
+		    h ^= zobrist[k * (GameEngine.NCOLOURS + 1) + val];
+		}
+		k++;
+	    }
+	}
+	return h;
+    }
+
+    /*
+     * Value the first swaps from lo up to hi, splitting the work if
+     * there's a pool to share it with.
+     */
+    private final class Search extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient GameEngine root;
+	private final int sdepth;
+	private final long deadline;
+	private final int lo;
+	private final int hi;
+
+	Search(final GameEngine nroot, final int ndepth, final long ndeadline,
+	       final int nlo, final int nhi) {
+	    root = nroot;
+	    sdepth = ndepth;
+	    deadline = ndeadline;
+	    lo = nlo;
+	    hi = nhi;
+	}
+
+	@Override
+	protected void compute() {
+	    if (pool != null && hi - lo > SPLIT) {
+		int mid = (lo + hi) >>> 1;
+		invokeAll(new Search(root, sdepth, deadline, lo, mid),
+			  new Search(root, sdepth, deadline, mid, hi));
+		return;
+	    }
+	    Scratch s = scratch(root);
+	    for (int k = lo; k < hi; k++) {
+		if (System.nanoTime() > deadline) {
+		    rootValues[k] = ABORTED;
+		    continue;
+		}
+		GameEngine copy = s.engines[0];
+		swap(copy, root, rootMoves[k]);
+		int v = search(s, 1, sdepth - 1);
+		rootValues[k] = v == ABORTED ? ABORTED
+		    : copy.getScore() - root.getScore() + v;
+	    }
+	}
+
+	/*
+	 * Value the position in the scratch engine for ply - 1, searched d
+	 * more swaps deep.
+	 */
+	private int search(final Scratch s, final int ply, final int d) {
+	    GameEngine pos = s.engines[ply - 1];
+	    if (d == 0 || !pos.isActive()) {
+		return value(pos);
+	    }
+	    if (System.nanoTime() > deadline) {
+		return ABORTED;
+	    }
+	    long h = hash(pos);
+	    int best = table.get(h, d);
+	    if (best != Integer.MIN_VALUE) {
+		return best;
+	    }
+	    best = value(pos);
+	    int[] moves = s.moves[ply];
+	    int nmoves = moves(pos, moves);
+	    GameEngine copy = s.engines[ply];
+	    for (int k = 0; k < nmoves; k++) {
+		swap(copy, pos, moves[k]);
+		int v = search(s, ply + 1, d - 1);
+		if (v == ABORTED) {
+		    return ABORTED;
+		}
+		best = Math.max(best, copy.getScore() - pos.getScore() + v);
+	    }
+	    table.put(h, d, best);
+	    return best;
+	}
+    }
+}
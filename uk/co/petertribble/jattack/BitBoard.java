@@ -0,0 +1,168 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jattack;
+
+/**
+ * A Board held as bitmasks. Each row has a long for each colour, with
+ * bit i set if column i holds that colour, so runs along a row can be
+ * found with shifts and masks, and vertical runs by combining the masks
+ * for three rows. Limited to 64 columns.
+ */
+final class BitBoard extends Board {
+
+    /**
+     * The maximum number of columns that fit in a mask.
+     */
+    static final int MAX_COLUMNS = Long.SIZE;
+
+    /**
+     * The masks, for colour c and row j at index (c - 1) * nrows + j.
+     */
+    private final long[] masks;
+    /**
+     * A mask with a bit set for every column.
+     */
+    private final long full;
+
+    BitBoard(final int nncolumns, final int nnrows) {
+	super(nncolumns, nnrows);
+	if (ncolumns > MAX_COLUMNS) {
+	    throw new IllegalArgumentException("Too many columns for bits");
+	}
+	masks = new long[GameEngine.NCOLOURS * nrows];
+	full = ncolumns == MAX_COLUMNS ? -1L : (1L << ncolumns) - 1;
+    }
+
+    /*
+     * The mask of cells in row j with value v, which may be 0 for the
+     * empty cells.
+     */
+    private long mask(final int v, final int j) {
+	if (v != 0) {
+	    return masks[(v - 1) * nrows + j];
+	}
+	long used = 0L;
+	for (int k = j; k < masks.length; k += nrows) {
+	    used |= masks[k];
+	}
+	return full & ~used;
+    }
+
+    @Override
+    int get(final int i, final int j) {
+	long bit = 1L << i;
+	for (int v = 1, k = j; k < masks.length; v++, k += nrows) {
+	    if ((masks[k] & bit) != 0) {
+		return v;
+	    }
+	}
+	return 0;
+    }
+
+    @Override
+    int put(final int i, final int j, final int v) {
+	long bit = 1L << i;
+	int old = 0;
+	for (int c = 1, k = j; k < masks.length; c++, k += nrows) {
+	    if ((masks[k] & bit) != 0) {
+		masks[k] &= ~bit;
+		old = c;
+	    }
+	}
+	if (v != 0) {
+	    masks[(v - 1) * nrows + j] |= bit;
+	}
+	return old;
+    }
+
+    @Override
+    void load(final int[][] src) {
+	for (int k = 0; k < masks.length; k++) {
+	    masks[k] = 0L;
+	}
+	for (int i = 0; i < ncolumns; i++) {
+	    long bit = 1L << i;
+	    for (int j = 0; j < nrows; j++) {
+		if (src[i][j] != 0) {
+		    masks[(src[i][j] - 1) * nrows + j] |= bit;
+		}
+	    }
+	}
+	recount();
+    }
+
+    @Override
+    void copyTo(final byte[] dst) {
+	for (int k = 0; k < ncolumns * nrows; k++) {
+	    dst[k] = 0;
+	}
+	for (int c = 1, k = 0; k < masks.length; c++) {
+	    for (int j = 0; j < nrows; j++, k++) {
+		long m = masks[k];
+		while (m != 0L) {
+		    dst[j * ncolumns + Long.numberOfTrailingZeros(m)] =
+			(byte) c;
+		    m &= m - 1;
+		}
+	    }
+	}
+    }
+
+    @Override
+    int runRight(final int i, final int j) {
+	long m = mask(get(i, j), j) >>> i;
+	return Math.min(ncolumns, i + Long.numberOfTrailingZeros(~m));
+    }
+
+    @Override
+    int runLeft(final int i, final int j) {
+	long m = mask(get(i, j), j) << (MAX_COLUMNS - 1 - i);
+	return i + 1 - Long.numberOfLeadingZeros(~m);
+    }
+
+    @Override
+    int nextHorizontal(final int i, final int j) {
+	if (i >= ncolumns) {
+	    return ncolumns;
+	}
+	long t = 0L;
+	for (int k = j; k < masks.length; k += nrows) {
+	    long m = masks[k];
+	    t |= m & (m >>> 1) & (m >>> 2);
+	}
+	t &= -1L << i;
+	return t == 0L ? ncolumns : Long.numberOfTrailingZeros(t);
+    }
+
+    @Override
+    int nextVertical(final int i, final int j0, final int j1, final int j2) {
+	if (i >= ncolumns) {
+	    return ncolumns;
+	}
+	long t = 0L;
+	for (int k = 0; k < masks.length; k += nrows) {
+	    t |= masks[k + j0] & masks[k + j1] & masks[k + j2];
+	}
+	t &= -1L << i;
+	return t == 0L ? ncolumns : Long.numberOfTrailingZeros(t);
+    }
+}
@@ -0,0 +1,394 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The storage for the cells of a game, indexed by column and then row.
+ * A cell holding 0 is empty, otherwise it holds a colour from 1 to
+ * GameEngine.NCOLOURS. Rows are as stored, so the engine is responsible
+ * for working out which row is at the top.
+ *
+ * The board keeps a count of the occupied cells in each row and in each
+ * column, updated as cells are set, so that the engine can check for
+ * danger or the end of the game, and find the height of a column,
+ * without walking the cells. It also notes which cells have changed, so
+ * that the hints can be brought up to date by looking at just those.
+ */
+abstract class Board {
+
+    /**
+     * The number of columns on the board.
+     */
+    final int ncolumns;
+    /**
+     * The number of rows on the board.
+     */
+    final int nrows;
+    /**
+     * The number of occupied cells in each row.
+     */
+    private final int[] rowcount;
+    /**
+     * The number of occupied cells in each column.
+     */
+    private final int[] colcount;
+    /**
+     * The number of times the contents of the board have changed.
+     */
+    private int changes;
+    /**
+     * For each row, the leftmost and rightmost columns changed since the
+     * changes were last cleared. A row is unchanged if the left is to the
+     * right of the right.
+     */
+    private final int[] changeleft;
+    private final int[] changeright;
+    /**
+     * The rows changed since the changes were last cleared.
+     */
+    private final int[] changedrows;
+    private int nchangedrows;
+    /**
+     * Set if the whole board has been replaced since the changes were
+     * last cleared.
+     */
+    private boolean allchanged = true;
+
+    Board(final int nncolumns, final int nnrows) {
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	rowcount = new int[nrows];
+	colcount = new int[ncolumns];
+	changeleft = new int[nrows];
+	changeright = new int[nrows];
+	changedrows = new int[nrows];
+	for (int j = 0; j < nrows; j++) {
+	    changeleft[j] = ncolumns;
+	    changeright[j] = -1;
+	}
+    }
+
+    /**
+     * Create a new empty board.
+     *
+     * @param type the type of board to create
+     * @param ncolumns the number of columns
+     * @param nrows the number of rows
+     *
+     * @return a new Board of the requested type
+     *
+     * @throws IllegalArgumentException if the board type can't handle
+     * the requested size
+     */
+    static Board newBoard(final BoardType type, final int ncolumns,
+			  final int nrows) {
+	if (type == BoardType.BITS) {
+	    return new BitBoard(ncolumns, nrows);
+	}
+	return new ArrayBoard(ncolumns, nrows);
+    }
+
+    /**
+     * Get the value of a cell.
+     *
+     * @param i the column of the cell
+     * @param j the row of the cell
+     *
+     * @return the value of the cell, 0 if empty
+     */
+    abstract int get(int i, int j);
+
+    /**
+     * Set the value of a cell, keeping the occupancy counts up to date.
+     *
+     * @param i the column of the cell
+     * @param j the row of the cell
+     * @param v the new value of the cell, 0 for empty
+     */
+    final void set(final int i, final int j, final int v) {
+	int old = put(i, j, v);
+	if (old != v) {
+	    changes++;
+	    if (changeleft[j] > changeright[j]) {
+		changedrows[nchangedrows++] = j;
+		changeleft[j] = i;
+		changeright[j] = i;
+	    } else if (i < changeleft[j]) {
+		changeleft[j] = i;
+	    } else if (i > changeright[j]) {
+		changeright[j] = i;
+	    }
+	}
+	if (old == 0) {
+	    if (v != 0) {
+		rowcount[j]++;
+		colcount[i]++;
+	    }
+	} else if (v == 0) {
+	    rowcount[j]--;
+	    colcount[i]--;
+	}
+    }
+
+    /**
+     * Store the value of a cell.
+     *
+     * @param i the column of the cell
+     * @param j the row of the cell
+     * @param v the new value of the cell, 0 for empty
+     *
+     * @return the previous value of the cell
+     */
+    abstract int put(int i, int j, int v);
+
+    /**
+     * Get the number of occupied cells in a row.
+     *
+     * @param j the row
+     *
+     * @return the number of non-empty cells in row j
+     */
+    int rowCount(final int j) {
+	return rowcount[j];
+    }
+
+    /**
+     * Get the number of occupied cells in a column.
+     *
+     * @param i the column
+     *
+     * @return the number of non-empty cells in column i
+     */
+    int colCount(final int i) {
+	return colcount[i];
+    }
+
+    /**
+     * Get a count of changes to the board, which will differ from any
+     * earlier value if any cell has changed since.
+     *
+     * @return the number of changes made to the board
+     */
+    int changeCount() {
+	return changes;
+    }
+
+    /**
+     * Check whether the whole board has been replaced since the changes
+     * were last cleared, in which case the changed rows aren't known.
+     *
+     * @return true if the whole board has changed
+     */
+    boolean allChanged() {
+	return allchanged;
+    }
+
+    /**
+     * Get the number of rows with cells changed since the changes were
+     * last cleared.
+     *
+     * @return the number of changed rows
+     */
+    int changedRows() {
+	return nchangedrows;
+    }
+
+    /**
+     * Get one of the changed rows.
+     *
+     * @param k which of the changed rows to get, from 0 up to
+     * changedRows()
+     *
+     * @return the row
+     */
+    int changedRow(final int k) {
+	return changedrows[k];
+    }
+
+    /**
+     * Get the leftmost changed column of a changed row.
+     *
+     * @param j the row
+     *
+     * @return the leftmost changed column
+     */
+    int changedLeft(final int j) {
+	return changeleft[j];
+    }
+
+    /**
+     * Get the rightmost changed column of a changed row.
+     *
+     * @param j the row
+     *
+     * @return the rightmost changed column
+     */
+    int changedRight(final int j) {
+	return changeright[j];
+    }
+
+    /**
+     * Forget the changes, so that later changes can be found.
+     */
+    void clearChanges() {
+	for (int k = 0; k < nchangedrows; k++) {
+	    changeleft[changedrows[k]] = ncolumns;
+	    changeright[changedrows[k]] = -1;
+	}
+	nchangedrows = 0;
+	allchanged = false;
+    }
+
+    /**
+     * Recalculate the occupancy counts from scratch, for use after the
+     * cells have been replaced wholesale.
+     */
+    void recount() {
+	changes++;
+	allchanged = true;
+	for (int j = 0; j < nrows; j++) {
+	    rowcount[j] = 0;
+	}
+	for (int i = 0; i < ncolumns; i++) {
+	    colcount[i] = 0;
+	}
+	for (int j = 0; j < nrows; j++) {
+	    for (int i = 0; i < ncolumns; i++) {
+		if (get(i, j) != 0) {
+		    rowcount[j]++;
+		    colcount[i]++;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Replace the contents of the board.
+     *
+     * @param src the new cell values, indexed by column and then row
+     */
+    void load(final int[][] src) {
+	for (int i = 0; i < ncolumns; i++) {
+	    for (int j = 0; j < nrows; j++) {
+		set(i, j, src[i][j]);
+	    }
+	}
+    }
+
+    /**
+     * Replace the contents of the board from a flat array, with row j
+     * starting at index j * ncolumns.
+     *
+     * @param src the new cell values
+     */
+    void load(final byte[] src) {
+	for (int j = 0; j < nrows; j++) {
+	    for (int i = 0; i < ncolumns; i++) {
+		set(i, j, src[j * ncolumns + i]);
+	    }
+	}
+    }
+
+    /**
+     * Copy the contents of the board into a flat array, with row j
+     * starting at index j * ncolumns.
+     *
+     * @param dst the array to copy the cell values into
+     */
+    void copyTo(final byte[] dst) {
+	for (int j = 0; j < nrows; j++) {
+	    for (int i = 0; i < ncolumns; i++) {
+		dst[j * ncolumns + i] = (byte) get(i, j);
+	    }
+	}
+    }
+
+    /**
+     * Copy the contents of the board into a buffer, one byte per cell,
+     * starting with row first and wrapping round to row 0 after the last
+     * row. The buffer's position is the same afterwards, but as it may be
+     * moved while copying, a buffer mustn't be shared between threads.
+     *
+     * @param dst the buffer to copy the cell values into
+     * @param offset the index in the buffer to start at
+     * @param first the row to copy first
+     */
+    void copyTo(final ByteBuffer dst, final int offset, final int first) {
+	int k = offset;
+	int j = first;
+	for (int n = 0; n < nrows; n++) {
+	    for (int i = 0; i < ncolumns; i++) {
+		dst.put(k++, (byte) get(i, j));
+	    }
+	    j = j + 1 == nrows ? 0 : j + 1;
+	}
+    }
+
+    /**
+     * Find the end of the horizontal run of equal cells starting at column
+     * i of row j.
+     *
+     * @param i the column to start from
+     * @param j the row to look at
+     *
+     * @return the column just past the end of the run
+     */
+    abstract int runRight(int i, int j);
+
+    /**
+     * Find the start of the horizontal run of equal cells ending at column
+     * i of row j.
+     *
+     * @param i the column to start from
+     * @param j the row to look at
+     *
+     * @return the first column of the run
+     */
+    abstract int runLeft(int i, int j);
+
+    /**
+     * Find the next column, starting at column i, where a horizontal run
+     * of at least three equal non-empty cells starts in row j.
+     *
+     * @param i the column to start from
+     * @param j the row to look at
+     *
+     * @return the first column of the next run, or the number of columns
+     * if there is none
+     */
+    abstract int nextHorizontal(int i, int j);
+
+    /**
+     * Find the next column, starting at column i, that has the same
+     * non-empty value in all three of the given rows.
+     *
+     * @param i the column to start from
+     * @param j0 the first row
+     * @param j1 the second row
+     * @param j2 the third row
+     *
+     * @return the next column with a vertical run through the given rows,
+     * or the number of columns if there is none
+     */
+    abstract int nextVertical(int i, int j0, int j1, int j2);
+}
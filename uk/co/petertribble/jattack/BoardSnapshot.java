@@ -0,0 +1,139 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * A copy of the visible state of a GameEngine at one moment, so that it
+ * can be drawn on one thread while the engine carries on in another.
+ * Snapshots are reused rather than created afresh, and the cells are
+ * only copied if the board has changed since the snapshot was last
+ * filled.
+ */
+final class BoardSnapshot {
+
+    /**
+     * The number of columns on the board.
+     */
+    final int ncolumns;
+    /**
+     * The number of rows on the board.
+     */
+    final int nrows;
+    /**
+     * The cells, with row j starting at index j * ncolumns.
+     */
+    final byte[] cells;
+    /**
+     * The engine's count of board changes when the cells were copied.
+     */
+    int changes;
+    /**
+     * The row at the top of the game.
+     */
+    int toprow;
+    /**
+     * The row coming into view and partly visible.
+     */
+    int partrow;
+    /**
+     * The current level.
+     */
+    int level;
+    /**
+     * The current score.
+     */
+    int score;
+    /**
+     * The length of the latest chain of matches.
+     */
+    int combo;
+    /**
+     * The number of runs cleared.
+     */
+    int runs;
+    /**
+     * Whether the game is in progress.
+     */
+    boolean active;
+    /**
+     * Whether any cells are within 1 row of the top.
+     */
+    boolean warning;
+
+    BoardSnapshot(final int nncolumns, final int nnrows) {
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	cells = new byte[ncolumns * nrows];
+    }
+
+    /**
+     * Fill this snapshot from the current state of an engine.
+     *
+     * @param engine the engine to copy
+     */
+    void capture(final GameEngine engine) {
+	int nchanges = engine.getChangeCount();
+	if (nchanges != changes) {
+	    engine.copyCells(cells);
+	    changes = nchanges;
+	}
+	toprow = engine.getToprow();
+	partrow = engine.getPartrow();
+	level = engine.getLevel();
+	score = engine.getScore();
+	combo = engine.getCombo();
+	runs = engine.getRuns();
+	active = engine.isActive();
+	warning = engine.isWarning();
+    }
+
+    /**
+     * Fill this snapshot from another of the same size.
+     *
+     * @param src the snapshot to copy
+     */
+    void copy(final BoardSnapshot src) {
+	if (src.changes != changes) {
+	    System.arraycopy(src.cells, 0, cells, 0, cells.length);
+	    changes = src.changes;
+	}
+	toprow = src.toprow;
+	partrow = src.partrow;
+	level = src.level;
+	score = src.score;
+	combo = src.combo;
+	runs = src.runs;
+	active = src.active;
+	warning = src.warning;
+    }
+
+    /**
+     * Get the value of a cell.
+     *
+     * @param i the column of the cell
+     * @param j the row of the cell
+     *
+     * @return the value of the cell, 0 if empty
+     */
+    int getCell(final int i, final int j) {
+	return cells[j * ncolumns + i];
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jattack;
+
+/**
+ * The available ways of storing the cells of a game.
+ */
+public enum BoardType {
+    /**
+     * A flat array of cells, one byte for each cell.
+     */
+    ARRAY,
+    /**
+     * A set of bitmasks for each row, one bit for each column and one mask
+     * for each colour. Limited to 64 columns.
+     */
+    BITS
+}
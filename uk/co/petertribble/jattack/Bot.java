@@ -0,0 +1,45 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * An automatic player, which plays a game by making swaps through a
+ * GameEngine. A bot is told of each new game and then, before every
+ * tick of the clock, given the chance to move. A bot only ever plays one
+ * game at a time, so needn't be thread safe.
+ */
+public interface Bot {
+
+    /**
+     * Called when a new game starts.
+     *
+     * @param engine the engine the game is played through
+     */
+    default void newGame(GameEngine engine) {
+    }
+
+    /**
+     * Called before every tick of the clock, to make any moves.
+     *
+     * @param engine the engine the game is played through
+     */
+    void play(GameEngine engine);
+}
@@ -0,0 +1,127 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * The settings that make a game easier or harder: how fast rows rise at
+ * the start, how quickly that speeds up, how full the board starts, and
+ * how many colours of cell there are. A Difficulty never changes, so
+ * may be shared between any number of games.
+ */
+public final class Difficulty {
+
+    /**
+     * The settings the game has always been played with.
+     */
+    public static final Difficulty DEFAULT = new Difficulty(
+	GameEngine.START_DELAY, 3, 3, GameEngine.NCOLOURS);
+
+    /**
+     * The starting delay between steps in milliseconds.
+     */
+    private final int startDelay;
+    /**
+     * The most the delay drops by each level, in milliseconds.
+     */
+    private final int delayStep;
+    /**
+     * The number of rows filled at the start, counting the two partly
+     * filled rows at the top of the stack.
+     */
+    private final int startRows;
+    /**
+     * The number of distinct cell values.
+     */
+    private final int colours;
+
+    /**
+     * Create a set of difficulty settings.
+     *
+     * @param nstartDelay the starting delay between steps in milliseconds
+     * @param ndelayStep the most the delay drops by each level, in
+     * milliseconds
+     * @param nstartRows the number of rows filled at the start, at least 2
+     * @param ncolours the number of distinct cell values, from 2 up to
+     * GameEngine.NCOLOURS
+     *
+     * @throws IllegalArgumentException if any setting is out of range
+     */
+    public Difficulty(final int nstartDelay, final int ndelayStep,
+		      final int nstartRows, final int ncolours) {
+	if (nstartDelay < 1) {
+	    throw new IllegalArgumentException("Start delay must be positive");
+	}
+	if (ndelayStep < 0) {
+	    throw new IllegalArgumentException("Delay step can't be negative");
+	}
+	if (nstartRows < 2) {
+	    throw new IllegalArgumentException("Too few starting rows");
+	}
+	if (ncolours < 2 || ncolours > GameEngine.NCOLOURS) {
+	    throw new IllegalArgumentException("Invalid number of colours");
+	}
+	startDelay = nstartDelay;
+	delayStep = ndelayStep;
+	startRows = nstartRows;
+	colours = ncolours;
+    }
+
+    /**
+     * Get the starting delay between steps.
+     *
+     * @return the starting delay in milliseconds
+     */
+    public int getStartDelay() {
+	return startDelay;
+    }
+
+    /**
+     * Get the most the delay drops by each level.
+     *
+     * @return the delay step in milliseconds
+     */
+    public int getDelayStep() {
+	return delayStep;
+    }
+
+    /**
+     * Get the number of rows filled at the start.
+     *
+     * @return the number of starting rows
+     */
+    public int getStartRows() {
+	return startRows;
+    }
+
+    /**
+     * Get the number of distinct cell values.
+     *
+     * @return the number of colours
+     */
+    public int getColours() {
+	return colours;
+    }
+
+    @Override
+    public String toString() {
+	return startDelay + "," + delayStep + "," + startRows + "," + colours;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * Runs a game's ticks on a loop thread, once a frame. A GameLoop drives
+ * a single game from a thread of its own; a SharedLoop drives many from
+ * one thread, giving each game a Driver that behaves as if it had a loop
+ * to itself.
+ */
+interface Driver {
+
+    /**
+     * Start running the game, if it isn't already.
+     */
+    void start();
+
+    /**
+     * Stop running the game. Unless called from the loop itself, waits
+     * for any frame in progress to finish, so that the caller may then
+     * safely use the game.
+     */
+    void stop();
+
+    /**
+     * Report whether the game is being run.
+     *
+     * @return true if the game has been started and not stopped
+     */
+    boolean isRunning();
+
+    /**
+     * Get the furthest behind schedule a frame has started, or finished,
+     * since this was last called, and start again.
+     *
+     * @return the most a frame was behind schedule, in nanoseconds
+     */
+    long takeLateness();
+}
@@ -0,0 +1,1343 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The rules of the game, independent of any display. A GamePanel drives
+ * and renders an engine, but an engine can equally be run headless.
+ */
+public final class GameEngine {
+
+    /**
+     * The starting delay between steps in milliseconds, inverse of speed.
+     */
+    public static final int START_DELAY = 401;
+    /**
+     * The length of a single tick of the game clock, in nanoseconds.
+     */
+    public static final long TICK_NANOS = 1_000_000L;
+    /**
+     * The starting level.
+     */
+    public static final int START_LEVEL = 1;
+    /**
+     * The number of steps taken for a new row to rise into view.
+     */
+    public static final int ROWSTEPS = 24;
+    /**
+     * The number of distinct cell values, numbered from 1.
+     */
+    public static final int NCOLOURS = 5;
+    /**
+     * The fewest columns a game can be played with.
+     */
+    public static final int MIN_COLUMNS = 6;
+    /**
+     * The fewest rows a game can be played with.
+     */
+    public static final int MIN_ROWS = 9;
+    /**
+     * The size of the state written by saveState, not counting the cells.
+     */
+    static final int STATE_BYTES = 6 * Long.BYTES + 8 * Integer.BYTES + 2;
+
+    /**
+     * The number of columns in the game.
+     */
+    private final int ncolumns;
+    /**
+     * The number of rows in the game.
+     */
+    private final int nrows;
+    /**
+     * The board holding the cells.
+     */
+    private final Board cells;
+    /**
+     * Cells marked for clearing in the current round of matching, laid
+     * out like the board with row j at index j * ncolumns.
+     */
+    private final boolean[] marked;
+    /**
+     * For each column, the topmost and bottommost marked positions, counted
+     * down from toprow. A column has no marks if the top is below the
+     * bottom.
+     */
+    private final int[] marktop;
+    private final int[] markbottom;
+    /**
+     * The columns containing marked cells.
+     */
+    private final int[] markcols;
+    private int nmarkcols;
+    /**
+     * For each column, the topmost and bottommost positions, counted down
+     * from toprow, that have changed since the board was last checked. A
+     * column is clean if the top is below the bottom.
+     */
+    private final int[] coltop;
+    private final int[] colbottom;
+    /**
+     * For each position, counted down from toprow, the leftmost and
+     * rightmost columns that have changed since the board was last
+     * checked. A row is clean if the left is to the right of the right.
+     */
+    private final int[] rowleft;
+    private final int[] rowright;
+    /**
+     * The columns and row positions that have changed.
+     */
+    private final int[] dirtycols;
+    private int ndirtycols;
+    private final int[] dirtyrows;
+    private int ndirtyrows;
+    /**
+     * Set if the whole board needs to be checked, rather than just the
+     * parts that have changed.
+     */
+    private boolean dirtyAll;
+    /**
+     * The row currently at the top of the game.
+     */
+    private int toprow;
+    /**
+     * The row coming into view and partly visible.
+     */
+    private int partrow;
+    /**
+     * The current level.
+     */
+    private int level = START_LEVEL;
+    /**
+     * The current delay between steps in nanoseconds, inverse to speed.
+     */
+    private long delay = START_DELAY * 1_000_000L;
+    /**
+     * The difficulty new games are started with.
+     */
+    private Difficulty difficulty = Difficulty.DEFAULT;
+    /**
+     * The most the delay between steps drops by each level in the
+     * current game, in nanoseconds.
+     */
+    private long delayStep;
+    /**
+     * The number of distinct cell values in the current game.
+     */
+    private int colours;
+    /**
+     * The time, in nanoseconds, accumulated towards the next step.
+     */
+    private long progress;
+    /**
+     * The current score.
+     */
+    private int score;
+    /**
+     * Is the game active (as opposed to stopped).
+     */
+    private boolean active;
+    /**
+     * The seed the current game was started with.
+     */
+    private long seed;
+    /**
+     * The source of new cells, owned by this game so that it's never
+     * contended, and seeded so that a game can be repeated.
+     */
+    private final SplitMix random = new SplitMix(0L);
+    /**
+     * The number of ticks of the game clock since the game started.
+     */
+    private long ticks;
+    /**
+     * Somewhere to copy the cells when saving or loading the state.
+     */
+    private final byte[] statecells;
+    /**
+     * Whether each new game should be recorded.
+     */
+    private boolean recordGames;
+    /**
+     * The recording of the current game, null if it isn't being recorded.
+     */
+    private Recording recording;
+    /**
+     * The swaps that would complete a run, made when first asked for.
+     */
+    private HintIndex hintIndex;
+    /**
+     * A counter for multiple matches in a single step.
+     */
+    private int multimatch;
+    /**
+     * The number of matches in the latest chain of matches.
+     */
+    private int combo;
+    /**
+     * The number of runs cleared so far this game.
+     */
+    private int runs;
+    /**
+     * The rows of garbage earned for opponents, and not yet sent.
+     */
+    private int attack;
+    /**
+     * Whether swaps and matches are reported as flight recorder events.
+     */
+    private boolean traced;
+
+    /**
+     * Create a game engine, with the board stored as an array.
+     *
+     * @param nncolumns the desired number of columns
+     * @param nnrows the desired number of rows
+     */
+    public GameEngine(final int nncolumns, final int nnrows) {
+	this(nncolumns, nnrows, BoardType.ARRAY);
+    }
+
+    /**
+     * Create a game engine, choosing how the board is stored.
+     *
+     * @param nncolumns the desired number of columns
+     * @param nnrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     *
+     * @throws IllegalArgumentException if the board type can't handle
+     * the requested size
+     */
+    public GameEngine(final int nncolumns, final int nnrows,
+		      final BoardType btype) {
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	cells = Board.newBoard(btype, ncolumns, nrows);
+	marked = new boolean[ncolumns * nrows];
+	marktop = new int[ncolumns];
+	markbottom = new int[ncolumns];
+	markcols = new int[ncolumns];
+	coltop = new int[ncolumns];
+	colbottom = new int[ncolumns];
+	dirtycols = new int[ncolumns];
+	rowleft = new int[nrows];
+	rowright = new int[nrows];
+	dirtyrows = new int[nrows];
+	statecells = new byte[ncolumns * nrows];
+	for (int i = 0; i < ncolumns; i++) {
+	    marktop[i] = nrows;
+	    coltop[i] = nrows;
+	}
+	for (int j = 0; j < nrows; j++) {
+	    rowleft[j] = ncolumns;
+	    rowright[j] = -1;
+	}
+    }
+
+    /**
+     * Start a new game, with a randomly chosen seed.
+     */
+    public void newGame() {
+	newGame(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Start a new game. Games started with the same seed, and played the
+     * same way, turn out the same.
+     *
+     * @param nseed the seed for the cells in the new game
+     */
+    public void newGame(final long nseed) {
+	seed = nseed;
+	random.setState(nseed);
+	ticks = 0;
+	level = START_LEVEL;
+	delay = difficulty.getStartDelay() * 1_000_000L;
+	delayStep = difficulty.getDelayStep() * 1_000_000L;
+	colours = difficulty.getColours();
+	progress = 0;
+	toprow = 0;
+	partrow = 0;
+	populate(difficulty.getStartRows());
+	active = true;
+	score = 0;
+	multimatch = 0;
+	combo = 0;
+	runs = 0;
+	attack = 0;
+	if (recordGames) {
+	    recording = new Recording(ncolumns, nrows, seed);
+	    recording.keyframe(ticks, this);
+	} else {
+	    recording = null;
+	}
+    }
+
+    /**
+     * Choose the difficulty of new games, starting with the next new game.
+     *
+     * @param ndifficulty the difficulty settings for new games
+     *
+     * @throws IllegalArgumentException if the board is too small for the
+     * number of starting rows
+     */
+    public void setDifficulty(final Difficulty ndifficulty) {
+	if (ndifficulty.getStartRows() > nrows - 2) {
+	    throw new IllegalArgumentException("Too many starting rows");
+	}
+	difficulty = ndifficulty;
+    }
+
+    /**
+     * Get the difficulty new games are started with.
+     *
+     * @return the difficulty settings for new games
+     */
+    public Difficulty getDifficulty() {
+	return difficulty;
+    }
+
+    /**
+     * Choose whether games are recorded, starting with the next new game.
+     *
+     * @param record true if games should be recorded
+     */
+    public void setRecording(final boolean record) {
+	recordGames = record;
+    }
+
+    /**
+     * Get the recording of the current game.
+     *
+     * @return the recording of the current game, or null if it isn't
+     * being recorded
+     */
+    public Recording getRecording() {
+	return recording;
+    }
+
+    /**
+     * Choose whether swaps and matches are reported as flight recorder
+     * events, whenever a recording has them enabled. Engines used for
+     * searching or simulation would swamp a recording, so this is off
+     * unless asked for.
+     *
+     * @param ntraced true if events should be reported
+     */
+    public void setTraced(final boolean ntraced) {
+	traced = ntraced;
+    }
+
+    /*
+     * If a cell contains 0, it's empty and isn't shown. If it is > 0, then
+     * the appropriate pattern for that cell is shown.
+     */
+    private void populate(final int itop) {
+	// make the cells at the top of the board empty
+	for (int j = 0; j < nrows - itop + 2; j++) {
+	    for (int i = 0; i < ncolumns; i++) {
+		cells.set(i, j, 0);
+	    }
+	}
+	// then populate the bottom itop rows
+	cells.set(2, nrows - itop, newCell());
+	cells.set(3, nrows - itop, newCell());
+	cells.set(1, nrows - itop + 1, newCell());
+	cells.set(2, nrows - itop + 1, newCell());
+	cells.set(3, nrows - itop + 1, newCell());
+	cells.set(4, nrows - itop + 1, newCell());
+	for (int j = nrows - itop + 2; j < nrows; j++) {
+	    fill(j);
+	}
+	dirtyAll = true;
+    }
+
+    /*
+     * Choose the value of a new cell. The first and last values come up
+     * half as often as the others.
+     */
+    private int newCell() {
+	return (random.nextInt(2 * (colours - 1)) + 1) / 2 + 1;
+    }
+
+    /**
+     * Advance the game clock by one tick, taking as many steps as the
+     * current speed calls for, which may be none.
+     *
+     * @return the number of steps taken
+     */
+    public int tick() {
+	int nsteps = 0;
+	if (active) {
+	    ticks++;
+	    progress += TICK_NANOS;
+	    while (active && progress >= delay) {
+		progress -= delay;
+		rise();
+		nsteps++;
+	    }
+	    if (recording != null && ticks % Recording.KEYFRAME_TICKS == 0) {
+		recording.keyframe(ticks, this);
+	    }
+	}
+	return nsteps;
+    }
+
+    /**
+     * Step up the screen straight away, rather than waiting for the clock.
+     */
+    public void step() {
+	if (recording != null && active) {
+	    recording.step(ticks);
+	}
+	rise();
+    }
+
+    /*
+     * Every time round the loop, we step up the screen. If a row reaches the
+     * top, we check to see if it contains any valid cells. If so, the game
+     * is lost. If not, we move the row counter down one, reset the partial
+     * row, populate the next row, and increase the speed.
+     */
+    private void rise() {
+	multimatch = 0;
+	if (partrow == 0) {
+	    fill(toprow);
+	}
+	partrow++;
+	if (partrow == ROWSTEPS) {
+	    partrow = 0;
+	    toprow++;
+	    if (toprow == nrows) {
+		toprow = 0;
+	    }
+	    endCheck();
+	    // the row that has just come into view is all new
+	    for (int i = 0; i < ncolumns; i++) {
+		dirty(i, nrows - 1, nrows - 1);
+	    }
+	    checkAll();
+	    upspeed();
+	}
+    }
+
+    /**
+     * Push rows of garbage, sent by an opponent, up from the bottom of the
+     * board straight away. The stack rises a whole row for each one, with
+     * a new row of cells coming in beneath it, so the partially visible
+     * row stays as far into view as it was. Unlike a row rising with the
+     * clock, garbage doesn't raise the speed. Pushing a cell off the top
+     * ends the game.
+     *
+     * @param nrows the number of rows of garbage
+     */
+    public void addGarbage(final int nrows) {
+	if (!active || nrows <= 0) {
+	    return;
+	}
+	if (recording != null) {
+	    recording.garbage(ticks, nrows);
+	}
+	for (int k = 0; k < nrows && active; k++) {
+	    pushRow();
+	}
+    }
+
+    /*
+     * Raise the stack by a whole row. The row coming into view joins the
+     * bottom of the board, and the row that was at the top becomes the
+     * one coming into view, which is filled straight away if it has
+     * already started to rise.
+     */
+    private void pushRow() {
+	multimatch = 0;
+	if (partrow == 0) {
+	    fill(toprow);
+	}
+	toprow++;
+	if (toprow == nrows) {
+	    toprow = 0;
+	}
+	endCheck();
+	if (active && partrow > 0) {
+	    fill(toprow);
+	}
+	for (int i = 0; i < ncolumns; i++) {
+	    dirty(i, nrows - 1, nrows - 1);
+	}
+	checkAll();
+    }
+
+    /**
+     * Get the rows of garbage earned, by clearing more than one run at
+     * once, since this was last called, and start counting again.
+     *
+     * @return the rows of garbage to send to an opponent
+     */
+    public int takeAttack() {
+	int n = attack;
+	attack = 0;
+	return n;
+    }
+
+    /*
+     * This checks if any cells in the very top row are populated. If so,
+     * the game is lost.
+     */
+    private void endCheck() {
+	if (cells.rowCount(toprow) > 0) {
+	    active = false;
+	    if (recording != null) {
+		recording.setEnd(ticks);
+	    }
+	}
+    }
+
+    /**
+     * Check whether we have any cells within 1 row of hitting the top.
+     *
+     * @return true if the top visible row has any cells in it
+     */
+    public boolean isWarning() {
+	return cells.rowCount(row(1)) > 0;
+    }
+
+    /**
+     * Get the height of the stack of cells in a column, not counting the
+     * partially visible row.
+     *
+     * @param i the column
+     *
+     * @return the number of occupied cells in the visible rows of column i
+     */
+    public int getHeight(final int i) {
+	return cells.get(i, toprow) == 0 ? cells.colCount(i)
+	    : cells.colCount(i) - 1;
+    }
+
+    /*
+     * Shuffle a row down 1 place, starting at row srow of column i.
+     * Used when clearing a horizontal line.
+     */
+    void shuffleDown(final int i, final int srow) {
+	int irow = srow;
+	int trow = srow - 1;
+	if (irow < 0) {
+	    irow += nrows;
+	}
+	if (trow < 0) {
+	    trow += nrows;
+	}
+	while (trow != toprow) {
+	    cells.set(i, irow, cells.get(i, trow));
+	    irow--;
+	    trow--;
+	    if (irow < 0) {
+		irow += nrows;
+	    }
+	    if (trow < 0) {
+		trow += nrows;
+	    }
+	}
+	cells.set(i, irow, 0);
+    }
+
+    /*
+     * The delay drops steadily at first, then by a fixed proportion once
+     * it gets short, so it never reaches zero.
+     */
+    private void upspeed() {
+	delay -= Math.min(delayStep, delay / 16);
+	level++;
+    }
+
+    private void fill(final int irow) {
+	for (int i = 0; i < ncolumns; i++) {
+	    cells.set(i, irow, newCell());
+	}
+    }
+
+    /**
+     * Check the whole board for runs of 3 or more, clearing any that are
+     * found. Each round marks every run on the board in a single scan,
+     * then clears all the marked cells together and lets the cells above
+     * them fall. Rounds continue until there are no runs left, with each
+     * run adding to the count of multiple matches. Clearing more than one
+     * run, side by side or by a cascade, earns a row of garbage for each
+     * run after the first. If anything was cleared, it's reported as a
+     * MatchEvent.
+     */
+    void checkAll() {
+	MatchEvent event = null;
+	if (traced && MatchEvent.TYPE.isEnabled()) {
+	    event = new MatchEvent();
+	    event.begin();
+	}
+	int oldruns = runs;
+	int oldscore = score;
+	int depth = 0;
+	int cleared = 0;
+	while (markRuns()) {
+	    cleared += clearMarked();
+	    depth++;
+	}
+	if (runs - oldruns > 1) {
+	    attack += runs - oldruns - 1;
+	}
+	if (event != null && depth > 0) {
+	    event.depth = depth;
+	    event.runs = runs - oldruns;
+	    event.cells = cleared;
+	    event.points = score - oldscore;
+	    event.commit();
+	}
+    }
+
+    /*
+     * Mark, and score, all the horizontal and vertical runs that pass
+     * through a changed cell, and then forget the changes. Only the
+     * visible rows are checked; the partially visible row at toprow is
+     * excluded, and vertical runs don't wrap through it. Returns true if
+     * anything was marked.
+     */
+    private boolean markRuns() {
+	boolean found = false;
+	boolean all = dirtyAll;
+	if (all) {
+	    dirtyAll = false;
+	    for (int n = 1; n < nrows; n++) {
+		found |= markRow(n, 0, ncolumns - 1);
+	    }
+	    // look for the start of vertical runs three rows at a time,
+	    // leaving the columns they're found in to be checked below
+	    for (int n = 1; n < nrows - 2; n++) {
+		int j0 = row(n);
+		int j1 = row(n + 1);
+		int j2 = row(n + 2);
+		int i = cells.nextVertical(0, j0, j1, j2);
+		while (i < ncolumns) {
+		    dirtyColumn(i, n, n + 2);
+		    i = cells.nextVertical(i + 1, j0, j1, j2);
+		}
+	    }
+	}
+	for (int k = 0; k < ndirtyrows; k++) {
+	    int n = dirtyrows[k];
+	    if (!all) {
+		found |= markRow(n, rowleft[n], rowright[n]);
+	    }
+	    rowleft[n] = ncolumns;
+	    rowright[n] = -1;
+	}
+	ndirtyrows = 0;
+	for (int k = 0; k < ndirtycols; k++) {
+	    int i = dirtycols[k];
+	    found |= markColumn(i, coltop[i], colbottom[i]);
+	    coltop[i] = nrows;
+	    colbottom[i] = 0;
+	}
+	ndirtycols = 0;
+	return found;
+    }
+
+    /*
+     * Mark the horizontal runs at position n that include any of the
+     * columns from left to right.
+     */
+    private boolean markRow(final int n, final int left, final int right) {
+	boolean found = false;
+	int j = row(n);
+	int i = left;
+	// find the start of any run we're in the middle of
+	if (cells.get(i, j) != 0) {
+	    i = cells.runLeft(i, j);
+	}
+	i = cells.nextHorizontal(i, j);
+	while (i <= right) {
+	    int imax = cells.runRight(i, j);
+	    int iscore = 10;
+	    for (int k = i; k < imax; k++) {
+		mark(k, n, j);
+		iscore *= 2;
+	    }
+	    addScore(iscore);
+	    found = true;
+	    i = cells.nextHorizontal(imax, j);
+	}
+	return found;
+    }
+
+    /*
+     * Mark the vertical runs in column i that include any of the positions
+     * from ntop down to nbottom.
+     */
+    private boolean markColumn(final int i, final int ntop,
+			       final int nbottom) {
+	boolean found = false;
+	int n = ntop;
+	int j = row(n);
+	int val = cells.get(i, j);
+	// find the start of any run we're in the middle of
+	if (val != 0) {
+	    while (n > 1) {
+		int jup = j == 0 ? nrows - 1 : j - 1;
+		if (cells.get(i, jup) != val) {
+		    break;
+		}
+		n--;
+		j = jup;
+	    }
+	}
+	while (n <= nbottom) {
+	    val = cells.get(i, j);
+	    int nmax = n + 1;
+	    int jmax = j + 1 == nrows ? 0 : j + 1;
+	    while (nmax < nrows && cells.get(i, jmax) == val) {
+		nmax++;
+		jmax++;
+		if (jmax == nrows) {
+		    jmax = 0;
+		}
+	    }
+	    if (val != 0 && nmax - n >= 3) {
+		int iscore = 10;
+		int jrow = j;
+		for (int k = n; k < nmax; k++) {
+		    mark(i, k, jrow);
+		    jrow++;
+		    if (jrow == nrows) {
+			jrow = 0;
+		    }
+		    iscore *= 2;
+		}
+		addScore(iscore);
+		found = true;
+	    }
+	    n = nmax;
+	    j = jmax;
+	}
+	return found;
+    }
+
+    /*
+     * Mark the cell in column i at position n, which is row j.
+     */
+    private void mark(final int i, final int n, final int j) {
+	marked[j * ncolumns + i] = true;
+	if (marktop[i] > markbottom[i]) {
+	    markcols[nmarkcols++] = i;
+	    marktop[i] = n;
+	    markbottom[i] = n;
+	} else if (n < marktop[i]) {
+	    marktop[i] = n;
+	} else if (n > markbottom[i]) {
+	    markbottom[i] = n;
+	}
+    }
+
+    /*
+     * Clear all the marked cells, letting the cells above fall. Each
+     * affected column is compacted in a single pass, working up from the
+     * lowest marked cell and copying each surviving cell down past the
+     * gaps left by the marked ones. As the cells in a column are always
+     * stacked from the bottom, the first empty cell ends the pass.
+     * Everything above the lowest cleared cell has moved, so needs
+     * checking again. Returns the number of cells cleared.
+     */
+    private int clearMarked() {
+	int cleared = 0;
+	for (int k = 0; k < nmarkcols; k++) {
+	    int i = markcols[k];
+	    int nbottom = markbottom[i];
+	    int nwrite = nbottom;
+	    int jwrite = row(nbottom);
+	    int nread = nbottom;
+	    int jread = jwrite;
+	    while (nread > 0) {
+		int val = cells.get(i, jread);
+		if (val == 0) {
+		    break;
+		}
+		if (marked[jread * ncolumns + i]) {
+		    marked[jread * ncolumns + i] = false;
+		    cleared++;
+		} else {
+		    if (jwrite != jread) {
+			cells.set(i, jwrite, val);
+		    }
+		    nwrite--;
+		    jwrite = jwrite == 0 ? nrows - 1 : jwrite - 1;
+		}
+		nread--;
+		jread = jread == 0 ? nrows - 1 : jread - 1;
+	    }
+	    // empty the space left at the top of the stack
+	    while (nwrite > nread) {
+		cells.set(i, jwrite, 0);
+		nwrite--;
+		jwrite = jwrite == 0 ? nrows - 1 : jwrite - 1;
+	    }
+	    marktop[i] = nrows;
+	    markbottom[i] = 0;
+	    if (nbottom > nwrite) {
+		dirty(i, nwrite + 1, nbottom);
+	    }
+	}
+	nmarkcols = 0;
+	return cleared;
+    }
+
+    /*
+     * Record that the cells in column i from position ntop down to nbottom
+     * have changed.
+     */
+    private void dirty(final int i, final int ntop, final int nbottom) {
+	dirtyColumn(i, ntop, nbottom);
+	for (int n = ntop; n <= nbottom; n++) {
+	    if (rowleft[n] > rowright[n]) {
+		dirtyrows[ndirtyrows++] = n;
+		rowleft[n] = i;
+		rowright[n] = i;
+	    } else if (i < rowleft[n]) {
+		rowleft[n] = i;
+	    } else if (i > rowright[n]) {
+		rowright[n] = i;
+	    }
+	}
+    }
+
+    /*
+     * Record that column i needs checking for vertical runs from position
+     * ntop down to nbottom.
+     */
+    private void dirtyColumn(final int i, final int ntop, final int nbottom) {
+	if (coltop[i] > colbottom[i]) {
+	    dirtycols[ndirtycols++] = i;
+	    coltop[i] = ntop;
+	    colbottom[i] = nbottom;
+	} else {
+	    coltop[i] = Math.min(coltop[i], ntop);
+	    colbottom[i] = Math.max(colbottom[i], nbottom);
+	}
+    }
+
+    /*
+     * Find the top of the stack of cells in column i that rests on the
+     * cell at position n.
+     */
+    private int stackTop(final int i, final int n) {
+	int ntop = n;
+	while (ntop > 1 && cells.get(i, row(ntop - 1)) != 0) {
+	    ntop--;
+	}
+	return ntop;
+    }
+
+    /*
+     * Convert a row in the cells array to a position counted down from
+     * toprow, so the top visible row is at position 1 and the bottom
+     * visible row at position nrows - 1.
+     */
+    private int position(final int j) {
+	int n = j - toprow;
+	return n < 0 ? n + nrows : n;
+    }
+
+    /*
+     * Convert a position counted down from toprow to a row in the cells
+     * array.
+     */
+    private int row(final int n) {
+	int j = toprow + n;
+	return j >= nrows ? j - nrows : j;
+    }
+
+    private void addScore(final int i) {
+	multimatch++;
+	score += i * multimatch;
+	combo = multimatch;
+	runs++;
+    }
+
+    /**
+     * Swap two neighbouring cells on the same row. If either cell ends up
+     * over an empty space it drops down, and any resulting runs are
+     * cleared.
+     *
+     * @param colclick the column of the first cell
+     * @param colnew the column of the second cell
+     * @param row the row containing both cells
+     *
+     * @return true if the swap was made
+     */
+    public boolean swap(final int colclick, final int colnew, final int row) {
+	if (!active || row == toprow || row < 0 || row >= nrows
+		|| colclick < 0 || colclick >= ncolumns
+		|| colnew < 0 || colnew >= ncolumns
+		|| (colclick != colnew + 1 && colclick != colnew - 1)) {
+	    return false;
+	}
+	SwapEvent event = null;
+	if (traced && SwapEvent.TYPE.isEnabled()) {
+	    event = new SwapEvent();
+	    event.begin();
+	}
+	int oldruns = runs;
+	int rowclick = row;
+	int rownew = row;
+	int n = position(row);
+	int topclick = n;
+	int topnew = n;
+	int itmp = cells.get(colclick, rowclick);
+	cells.set(colclick, rowclick, cells.get(colnew, rownew));
+	cells.set(colnew, rownew, itmp);
+	// if an empty cell, shuffle down anything above it
+	if (cells.get(colclick, rowclick) == 0) {
+	    shuffleDown(colclick, rowclick);
+	    topclick = stackTop(colclick, n);
+	}
+	if (cells.get(colnew, rownew) == 0) {
+	    shuffleDown(colnew, rownew);
+	    topnew = stackTop(colnew, n);
+	}
+	// if we end up over an empty cell, drop down
+	int rowbelow = rownew + 1;
+	if (rowbelow == nrows) {
+	    rowbelow = 0;
+	}
+	while (rowbelow != toprow && cells.get(colnew, rowbelow) == 0) {
+	    cells.set(colnew, rowbelow, cells.get(colnew, rownew));
+	    cells.set(colnew, rownew, 0);
+	    rowbelow++;
+	    rownew++;
+	    if (rowbelow == nrows) {
+		rowbelow = 0;
+	    }
+	    if (rownew == nrows) {
+		rownew = 0;
+	    }
+	}
+	rowbelow = rowclick + 1;
+	if (rowbelow == nrows) {
+	    rowbelow = 0;
+	}
+	while (rowbelow != toprow && cells.get(colclick, rowbelow) == 0) {
+	    cells.set(colclick, rowbelow, cells.get(colclick, rowclick));
+	    cells.set(colclick, rowclick, 0);
+	    rowbelow++;
+	    rowclick++;
+	    if (rowbelow == nrows) {
+		rowbelow = 0;
+	    }
+	    if (rowclick == nrows) {
+		rowclick = 0;
+	    }
+	}
+	dirty(colclick, topclick, position(rowclick));
+	dirty(colnew, topnew, position(rownew));
+	if (recording != null) {
+	    recording.swap(ticks, colclick, colnew, row);
+	}
+	checkAll();
+	if (event != null) {
+	    event.column = Math.min(colclick, colnew);
+	    event.row = row;
+	    event.runs = runs - oldruns;
+	    event.commit();
+	}
+	return true;
+    }
+
+    /**
+     * Find a swap that would complete a run, to suggest to the player.
+     * The swap nearest the bottom of the board is chosen, and the
+     * leftmost if there's more than one in a row.
+     *
+     * @return the swap, as row * columns + the column of the left cell,
+     * or -1 if there isn't one
+     */
+    public int getHint() {
+	return hints().first();
+    }
+
+    /**
+     * Find all the swaps that would complete a run. The swaps are kept up
+     * to date as the board changes, so this only has to look at the
+     * parts of the board that have changed since it was last called.
+     *
+     * @param dst where to put the swaps, each as row * columns + the
+     * column of the left cell, with room for columns * rows of them
+     *
+     * @return the number of swaps found
+     */
+    public int getHints(final int[] dst) {
+	return hints().copyTo(dst);
+    }
+
+    /**
+     * Count the swaps that would complete a run.
+     *
+     * @return the number of swaps that would complete a run
+     */
+    public int getHintCount() {
+	return hints().count();
+    }
+
+    /*
+     * Bring the hints up to date.
+     */
+    private HintIndex hints() {
+	if (hintIndex == null) {
+	    hintIndex = new HintIndex(cells);
+	}
+	hintIndex.update(toprow);
+	return hintIndex;
+    }
+
+    /**
+     * Replace the contents of the board, for example to set up a known
+     * position.
+     *
+     * @param ncells the new cell values, indexed by column and then row
+     * @param ntoprow the row to be at the top of the game
+     */
+    void setBoard(final int[][] ncells, final int ntoprow) {
+	cells.load(ncells);
+	toprow = ntoprow;
+	partrow = 0;
+	progress = 0;
+	markAllDirty();
+    }
+
+    /**
+     * Write out everything needed to carry on the game from where it is
+     * now. Only valid between operations, when no runs are waiting to be
+     * cleared.
+     *
+     * @param out where to write the state
+     *
+     * @throws IOException if the state can't be written
+     */
+    void saveState(final DataOutput out) throws IOException {
+	out.writeLong(seed);
+	out.writeLong(random.getState());
+	out.writeLong(ticks);
+	out.writeLong(delay);
+	out.writeLong(delayStep);
+	out.writeInt(colours);
+	out.writeLong(progress);
+	out.writeInt(toprow);
+	out.writeInt(partrow);
+	out.writeInt(level);
+	out.writeInt(score);
+	out.writeInt(multimatch);
+	out.writeInt(combo);
+	out.writeInt(runs);
+	out.writeBoolean(active);
+	out.writeBoolean(dirtyAll);
+	cells.copyTo(statecells);
+	out.write(statecells);
+    }
+
+    /**
+     * Carry on a game from a state written by saveState, including the
+     * difficulty it was being played at. The game is no longer recorded.
+     *
+     * @param in where to read the state from
+     *
+     * @throws IOException if the state can't be read, or isn't one the
+     * game could have got into
+     */
+    void loadState(final DataInput in) throws IOException {
+	long nseed = in.readLong();
+	long nstate = in.readLong();
+	long nticks = in.readLong();
+	long ndelay = in.readLong();
+	long ndelayStep = in.readLong();
+	int ncolours = in.readInt();
+	long nprogress = in.readLong();
+	int ntoprow = in.readInt();
+	int npartrow = in.readInt();
+	int nlevel = in.readInt();
+	int nscore = in.readInt();
+	int nmultimatch = in.readInt();
+	int ncombo = in.readInt();
+	int nruns = in.readInt();
+	boolean nactive = in.readBoolean();
+	boolean all = in.readBoolean();
+	in.readFully(statecells);
+	// check anything that would otherwise break the game later on,
+	// before any of it is taken on
+	if (ndelay <= 0L || ncolours < 2 || ncolours > NCOLOURS
+		|| ntoprow < 0 || ntoprow >= nrows
+		|| npartrow < 0 || npartrow >= ROWSTEPS) {
+	    throw new IOException("Invalid game state");
+	}
+	for (byte b : statecells) {
+	    if (b < 0 || b > NCOLOURS) {
+		throw new IOException("Invalid cell in game state");
+	    }
+	}
+	seed = nseed;
+	random.setState(nstate);
+	ticks = nticks;
+	delay = ndelay;
+	delayStep = ndelayStep;
+	colours = ncolours;
+	progress = nprogress;
+	toprow = ntoprow;
+	partrow = npartrow;
+	level = nlevel;
+	score = nscore;
+	multimatch = nmultimatch;
+	combo = ncombo;
+	runs = nruns;
+	active = nactive;
+	cells.load(statecells);
+	recording = null;
+	// the saved game was at rest, with nothing left to check
+	forgetChanges();
+	dirtyAll = all;
+    }
+
+    /**
+     * Make this engine's game a copy of another, the same size, so that
+     * moves can be tried out without disturbing the original. Only valid
+     * between operations. The copy isn't recorded, and it starts a fresh
+     * step, so the score for a move tried on it doesn't depend on matches
+     * made before the copy.
+     *
+     * @param other the engine to copy
+     *
+     * @throws IllegalArgumentException if the other engine is a different
+     * size
+     */
+    void copyFrom(final GameEngine other) {
+	if (other.ncolumns != ncolumns || other.nrows != nrows) {
+	    throw new IllegalArgumentException("Engine is the wrong size");
+	}
+	seed = other.seed;
+	random.setState(other.random.getState());
+	ticks = other.ticks;
+	delay = other.delay;
+	delayStep = other.delayStep;
+	colours = other.colours;
+	progress = other.progress;
+	toprow = other.toprow;
+	partrow = other.partrow;
+	level = other.level;
+	score = other.score;
+	multimatch = 0;
+	combo = other.combo;
+	runs = other.runs;
+	active = other.active;
+	other.cells.copyTo(statecells);
+	cells.load(statecells);
+	recording = null;
+	forgetChanges();
+	dirtyAll = other.dirtyAll;
+    }
+
+    /*
+     * Forget which parts of the board have changed.
+     */
+    private void forgetChanges() {
+	for (int k = 0; k < ndirtycols; k++) {
+	    coltop[dirtycols[k]] = nrows;
+	    colbottom[dirtycols[k]] = 0;
+	}
+	ndirtycols = 0;
+	for (int k = 0; k < ndirtyrows; k++) {
+	    rowleft[dirtyrows[k]] = ncolumns;
+	    rowright[dirtyrows[k]] = -1;
+	}
+	ndirtyrows = 0;
+    }
+
+    /**
+     * Force the whole board to be checked for runs next time, rather than
+     * just the cells that have changed.
+     */
+    void markAllDirty() {
+	dirtyAll = true;
+    }
+
+    /**
+     * Get a count of changes to the board, so that a view can cheaply tell
+     * whether any cell has changed since it last looked.
+     *
+     * @return the number of changes made to the board
+     */
+    int getChangeCount() {
+	return cells.changeCount();
+    }
+
+    /**
+     * Copy the cells into a flat array, with row j starting at index
+     * j * ncolumns.
+     *
+     * @param dst the array to copy the cell values into
+     */
+    void copyCells(final byte[] dst) {
+	cells.copyTo(dst);
+    }
+
+    /**
+     * Copy the cells into a buffer in the order they're shown, one byte
+     * per cell and row by row from the top visible row down to the
+     * partly visible row at the bottom. The buffer's position is the same
+     * afterwards.
+     *
+     * @param dst the buffer to copy the cell values into
+     * @param offset the index in the buffer to start at
+     */
+    void copyCells(final ByteBuffer dst, final int offset) {
+	cells.copyTo(dst, offset, row(1));
+    }
+
+    /**
+     * Get the value of a cell.
+     *
+     * @param i the column of the cell
+     * @param j the row of the cell
+     *
+     * @return the value of the cell, 0 if empty
+     */
+    public int getCell(final int i, final int j) {
+	return cells.get(i, j);
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return the number of columns in the game
+     */
+    public int getColumns() {
+	return ncolumns;
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return the number of rows in the game
+     */
+    public int getRows() {
+	return nrows;
+    }
+
+    /**
+     * Get the row currently at the top of the game, which is the row that
+     * is partly visible as it rises into view.
+     *
+     * @return the index of the top row
+     */
+    public int getToprow() {
+	return toprow;
+    }
+
+    /**
+     * Get how far the partly visible row has risen into view.
+     *
+     * @return the number of steps the partial row has risen
+     */
+    public int getPartrow() {
+	return partrow;
+    }
+
+    /**
+     * Get the current level.
+     *
+     * @return the current level
+     */
+    public int getLevel() {
+	return level;
+    }
+
+    /**
+     * Get the current delay between steps, inverse to speed.
+     *
+     * @return the current delay in nanoseconds
+     */
+    public long getDelay() {
+	return delay;
+    }
+
+    /**
+     * Get the seed the current game was started with.
+     *
+     * @return the seed for the current game
+     */
+    public long getSeed() {
+	return seed;
+    }
+
+    /**
+     * Get the number of ticks of the game clock since the game started.
+     *
+     * @return the number of ticks so far
+     */
+    public long getTicks() {
+	return ticks;
+    }
+
+    /**
+     * Get the current score.
+     *
+     * @return the current score
+     */
+    public int getScore() {
+	return score;
+    }
+
+    /**
+     * Get the number of matches in the latest chain, where each match
+     * made before the board next rises adds to the chain.
+     *
+     * @return the length of the latest chain of matches, 0 if there
+     * haven't been any this game
+     */
+    public int getCombo() {
+	return combo;
+    }
+
+    /**
+     * Get the number of runs cleared so far this game.
+     *
+     * @return the number of runs cleared
+     */
+    public int getRuns() {
+	return runs;
+    }
+
+    /**
+     * Is the game active (as opposed to stopped).
+     *
+     * @return true if the game is still in progress
+     */
+    public boolean isActive() {
+	return active;
+    }
+}
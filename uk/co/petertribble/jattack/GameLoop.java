@@ -0,0 +1,156 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
+import jdk.jfr.EventType;
+
+/**
+ * Drive a game from a dedicated thread paced by System.nanoTime. Once a
+ * frame, the elapsed time is converted into a whole number of fixed
+ * length ticks, which are handed to the game to run on the loop thread.
+ * Any time left over is carried to the next frame, so the game runs at
+ * exactly the rate set by its clock however the frames fall, and nothing
+ * the event dispatch thread does can hold it up. Each frame is reported
+ * as a TickEvent when the flight recorder is recording them.
+ */
+final class GameLoop implements Runnable, Driver {
+
+    /**
+     * The interval between frames, in nanoseconds.
+     */
+    static final long FRAME_NANOS = 1_000_000_000L / 60;
+    /**
+     * The most time that will be caught up in one frame, in nanoseconds.
+     * If the loop stalls for longer than this, the game loses the time
+     * rather than running at high speed to catch up.
+     */
+    private static final long MAX_LAG = 250_000_000L;
+
+    /**
+     * Told how many ticks to run, once a frame, on the loop thread.
+     */
+    private final IntConsumer game;
+    /**
+     * The thread running the loop, null if stopped. A thread keeps
+     * going only while it is the current one, so a quick stop and start
+     * can't leave two running.
+     */
+    private volatile Thread thread;
+    /**
+     * The furthest behind schedule a frame has been, in nanoseconds,
+     * since it was last asked for.
+     */
+    private final AtomicLong lateness = new AtomicLong();
+
+    /**
+     * Create a game loop.
+     *
+     * @param ngame told, on the loop thread, how many ticks to run
+     */
+    GameLoop(final IntConsumer ngame) {
+	game = ngame;
+    }
+
+    @Override
+    public void start() {
+	if (thread == null) {
+	    Thread t = new Thread(this, "jattack-loop");
+	    t.setDaemon(true);
+	    thread = t;
+	    t.start();
+	}
+    }
+
+    @Override
+    public void stop() {
+	Thread t = thread;
+	if (t != null) {
+	    thread = null;
+	    LockSupport.unpark(t);
+	    if (t != Thread.currentThread()) {
+		boolean interrupted = false;
+		while (t.isAlive()) {
+		    try {
+			t.join();
+		    } catch (InterruptedException ie) {
+			interrupted = true;
+		    }
+		}
+		if (interrupted) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}
+    }
+
+    @Override
+    public boolean isRunning() {
+	return thread != null;
+    }
+
+    @Override
+    public long takeLateness() {
+	return lateness.getAndSet(0L);
+    }
+
+    @Override
+    public void run() {
+	Thread me = Thread.currentThread();
+	// the first look at an event type starts up the flight recorder,
+	// which takes a while, so get it done before the game is timed
+	EventType ticktype = TickEvent.TYPE;
+	long last = System.nanoTime();
+	long lag = 0;
+	long next = last;
+	while (thread == me) {
+	    long now = System.nanoTime();
+	    long late = Math.max(0L, now - next);
+	    lateness.getAndAccumulate(late, Math::max);
+	    TickEvent event = null;
+	    if (ticktype.isEnabled()) {
+		event = new TickEvent();
+		event.begin();
+	    }
+	    lag = Math.min(lag + now - last, MAX_LAG);
+	    last = now;
+	    int nticks = (int) (lag / GameEngine.TICK_NANOS);
+	    lag -= nticks * GameEngine.TICK_NANOS;
+	    game.accept(nticks);
+	    if (event != null) {
+		event.ticks = nticks;
+		event.late = late;
+		event.commit();
+	    }
+	    next += FRAME_NANOS;
+	    now = System.nanoTime();
+	    if (next - now > 0) {
+		LockSupport.parkNanos(next - now);
+	    } else {
+		// fallen behind, don't try to make up the missed frames
+		lateness.getAndAccumulate(now - next, Math::max);
+		next = now;
+	    }
+	}
+    }
+}
@@ -20,36 +20,40 @@
 
 package uk.co.petertribble.jattack;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseEvent;
-import java.awt.event.ActionListener;
 import java.awt.event.MouseListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.AbstractAction;
 import javax.swing.JPanel;
 import javax.swing.KeyStroke;
-import javax.swing.Timer;
+import javax.swing.SwingUtilities;
 
 /**
- * The visible part of the game.
+ * The visible part of the game. The engine runs on a loop thread, either
+ * its own or one shared with other games, publishing snapshots of the
+ * board that are drawn on the event thread, and input is passed to the
+ * loop through a queue, so that neither side can hold the other up.
+ * Swaps, matches, frames of the loop and drawing the board are all
+ * reported as flight recorder events. A game played on a server has no
+ * engine here; the snapshots come from the server, and input is passed
+ * on to it.
  */
-public final class GamePanel extends JPanel implements ActionListener,
-						       MouseListener {
+public final class GamePanel extends JPanel implements MouseListener {
 
     private static final long serialVersionUID = 1L;
 
-    /**
-     * The starting delay, inverse of speed.
-     */
-    private static final int START_DELAY = 401;
-    /**
-     * The starting level.
-     */
-    private static final int START_LEVEL = 1;
-
     /**
      * The number of columns in the game.
      */
@@ -59,61 +63,98 @@ public final class GamePanel extends JPanel implements ActionListener,
      */
     private final int nrows;
     /**
-     * The size of each cell.
+     * The size of each cell, one pixel for each step a row rises.
      */
-    private static final int CELLSIZE = 24;
+    private static final int CELLSIZE = GameEngine.ROWSTEPS;
     /**
      * The size of the cell body, allowing a single pixel border.
      */
     private static final int CELLP = CELLSIZE - 2;
     /**
-     * An array to hold the cells.
+     * The engine running the game, null if it is played on a server.
      */
-    private int[][] cells;
+    private final GameEngine engine;
     /**
-     * The row currently at the top of the game.
+     * The server playing the game, null if it is played here.
      */
-    private int toprow;
+    private final RemoteGame remote;
     /**
-     * The row coming into view and partly visible.
+     * The loop driving the game, either of its own or shared with other
+     * games.
      */
-    private int partrow;
+    private final Driver loop;
     /**
-     * The current level.
+     * Snapshots passed from the engine to be drawn.
      */
-    private int level = START_LEVEL;
+    private final SnapshotExchange snapshots;
     /**
-     * The current delay, inverse to speed.
+     * The snapshot being drawn.
      */
-    private int delay = START_DELAY;
+    private BoardSnapshot snap;
     /**
-     * A Timer to update the game.
+     * Input waiting to be applied to the engine.
      */
-    private Timer timer;
+    private final InputQueue input = new InputQueue();
     /**
-     * The row last clicked on.
+     * The input being applied to the engine, copied out of the queue.
+     * Only used by runInput.
      */
-    private int rowclick = -2;
+    private final Input applying = new Input();
     /**
-     * The column last clicked on.
+     * The replay being shown, null if playing a game. Only changed while
+     * the loop is stopped.
      */
-    private int colclick = -2;
+    private Replay replay;
     /**
-     * The current score.
+     * The bot playing the game, null if there isn't one. Only changed
+     * while the loop is stopped.
      */
-    private int score;
+    private Bot bot;
     /**
-     * Is the game active (as opposed to stopped).
+     * Rows of garbage sent by opponents and waiting to be pushed onto the
+     * board. Only used on the loop thread, or while the loop is stopped.
      */
-    boolean active;
+    private int garbage;
     /**
-     * The index of the current warning color.
+     * Set while the latest snapshot is waiting to be shown, so that
+     * requests don't pile up if the event thread falls behind.
      */
-    private int iwarn;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    /**
+     * Shows the latest snapshot, run on the event thread.
+     */
+    private final Runnable showLatest = this::showSnapshot;
     /**
-     * A counter for multiple matches in a single step.
+     * The cell last clicked on, as row * ncolumns + column, or -1 if none.
+     * Set on the event thread, and read wherever the frame is drawn.
      */
-    private int multimatch;
+    private volatile int selected = -1;
+    /**
+     * The left cell of the hinted swap, as row * ncolumns + column, or -1
+     * if none, in the bottom half, and the engine's count of board
+     * changes when the hint was given in the top half. The hint is only
+     * shown while the board is unchanged. Set on the loop thread.
+     */
+    private volatile long hinted = -1L;
+    /**
+     * How far the board had risen, in pixels, as last drawn, for hit
+     * testing on the event thread.
+     */
+    private volatile int displayed;
+    /**
+     * Whether the game was active as last drawn, for hit testing on the
+     * event thread.
+     */
+    private volatile boolean displayedActive;
+    /**
+     * The canvas drawn on in active rendering mode, null if the panel is
+     * painted in the usual way.
+     */
+    private final ActiveRenderer canvas;
+    /**
+     * The index of the current warning color.
+     */
+    private int iwarn;
 
     /**
      * The possible colors of each cell.
@@ -125,6 +166,16 @@ public final class GamePanel extends JPanel implements ActionListener,
 					    Color.YELLOW,
 					    Color.ORANGE,
 					    Color.PINK};
+    /**
+     * The colors the background flashes through as a warning, darker
+     * versions of the cell colors.
+     */
+    private static final Color[] WARNCOLOURS = new Color[COLOURS.length];
+    static {
+	for (int i = 0; i < COLOURS.length; i++) {
+	    WARNCOLOURS[i] = COLOURS[i].darker();
+	}
+    }
     /**
      * The background color.
      */
@@ -133,11 +184,127 @@ public final class GamePanel extends JPanel implements ActionListener,
      * The color of a border put around a clicked cell..
      */
     private static final Color CLICKCOLOR = Color.WHITE;
+    /**
+     * Pre-rendered images of the cells.
+     */
+    private final SpriteCache sprites = new SpriteCache(COLOURS, CLICKCOLOR,
+							CELLSIZE);
+    /**
+     * The rendered board. Rather than being redrawn from scratch each
+     * time, it is scrolled in place as the board rises, and only the
+     * cells that have changed are redrawn.
+     */
+    private BufferedImage frame;
+    /**
+     * Graphics for drawing into the frame, in board coordinates.
+     */
+    private Graphics2D frameg;
+    /**
+     * Graphics for scrolling the frame, in device pixels.
+     */
+    private Graphics2D framecopy;
+    /**
+     * The configuration the frame was created for.
+     */
+    private GraphicsConfiguration framegc;
+    /**
+     * The display scale of the frame.
+     */
+    private double framescale;
+    /**
+     * What is currently drawn in each cell of the frame, -1 if unknown,
+     * indexed by row and then column.
+     */
+    private final int[] shown;
+    /**
+     * How far the board had risen, in pixels, when the frame was drawn.
+     */
+    private int shownoffset;
+    /**
+     * The partially visible row when the frame was drawn.
+     */
+    private int showntop;
+    /**
+     * The background color the frame was drawn with, null if the frame
+     * needs to be redrawn completely.
+     */
+    private Color shownbg;
+    /**
+     * The engine's count of board changes when the frame was drawn.
+     */
+    private int shownchanges;
+    /**
+     * The selected cell when the frame was drawn.
+     */
+    private int shownsel = -1;
+    /**
+     * The selected cell while the frame is being drawn.
+     */
+    private int drawsel = -1;
+    /**
+     * The left cell of the hinted swap when the frame was drawn.
+     */
+    private int shownhint = -1;
+    /**
+     * The left cell of the hinted swap while the frame is being drawn.
+     */
+    private int drawhint = -1;
+    /**
+     * The cells whose highlighting may have changed.
+     */
+    private final int[] highlit = new int[6];
 
     /**
      * An InfoPanel to be updated with the game's progress.
      */
     private final InfoPanel ipanel;
+    /**
+     * The message to show while the game is in progress.
+     */
+    private volatile String status = "";
+    /**
+     * The score the InfoPanel was last asked to show. Set wherever the
+     * frame is drawn, and read on the event thread, as are the other
+     * values for the InfoPanel.
+     */
+    private volatile int infoscore = -1;
+    /**
+     * The level the InfoPanel was last asked to show.
+     */
+    private volatile int infolevel = -1;
+    /**
+     * The combo the InfoPanel was last asked to show.
+     */
+    private volatile int infocombo = -1;
+    /**
+     * The number of runs the InfoPanel was last asked to show.
+     */
+    private volatile int inforuns = -1;
+    /**
+     * The message the InfoPanel was last asked to show.
+     */
+    private volatile String infomsg = "";
+    /**
+     * Set while the active renderer has asked for the InfoPanel to be
+     * updated and the event thread hasn't yet done so.
+     */
+    private final AtomicBoolean infopending = new AtomicBoolean();
+    /**
+     * Updates the InfoPanel, run on the event thread.
+     */
+    private final Runnable showInfoLater = this::updateInfo;
+    /**
+     * The number of ticks the loop has run, counted on the loop thread.
+     */
+    private final AtomicLong ticksrun = new AtomicLong();
+    /**
+     * Whether the performance figures are shown. Set on the event thread.
+     */
+    private volatile boolean perfShown;
+    /**
+     * The performance figures, worked out wherever the frame is drawn.
+     */
+    private final PerfStats perf = new PerfStats();
 
     /**
      * Create a game panel.
@@ -148,206 +315,405 @@ public final class GamePanel extends JPanel implements ActionListener,
      */
     public GamePanel(final InfoPanel nipanel, final int nncolumns,
 		     final int nnrows) {
+	this(nipanel, nncolumns, nnrows, BoardType.ARRAY);
+    }
+
+    /**
+     * Create a game panel, choosing how the board is stored.
+     *
+     * @param nipanel and InfoPanel showing information on game progress
+     * @param nncolumns the desired number of rows
+     * @param nnrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     */
+    public GamePanel(final InfoPanel nipanel, final int nncolumns,
+		     final int nnrows, final BoardType btype) {
+	this(nipanel, nncolumns, nnrows, btype, 0);
+    }
+
+    /**
+     * Create a game panel, choosing how the board is stored and how it is
+     * rendered. With a positive frame rate, the board is drawn actively
+     * onto a canvas by a dedicated thread, at that rate; otherwise the
+     * panel is painted when Swing asks.
+     *
+     * @param nipanel and InfoPanel showing information on game progress
+     * @param nncolumns the desired number of rows
+     * @param nnrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     * @param fps the frame rate for active rendering, 0 for none
+     */
+    public GamePanel(final InfoPanel nipanel, final int nncolumns,
+		     final int nnrows, final BoardType btype, final int fps) {
+	this(nipanel, nncolumns, nnrows, btype, fps, null, null);
+    }
+
+    /**
+     * Create a game panel driven by a loop shared with other games, rather
+     * than one of its own. The panel is painted when Swing asks.
+     *
+     * @param nipanel and InfoPanel showing information on game progress
+     * @param nncolumns the desired number of rows
+     * @param nnrows the desired number of rows
+     * @param btype the type of board to store the cells in
+     * @param shared the loop to drive the game
+     */
+    GamePanel(final InfoPanel nipanel, final int nncolumns,
+	      final int nnrows, final BoardType btype,
+	      final SharedLoop shared) {
+	this(nipanel, nncolumns, nnrows, btype, 0, shared, null);
+    }
+
+    /**
+     * Create a game panel for a game played on a server. Hints and
+     * replays aren't available, and there can't be a bot.
+     *
+     * @param nipanel and InfoPanel showing information on game progress
+     * @param nremote the game on the server
+     */
+    GamePanel(final InfoPanel nipanel, final RemoteGame nremote) {
+	this(nipanel, nremote.getColumns(), nremote.getRows(),
+	     BoardType.ARRAY, 0, null, nremote);
+    }
+
+    /*
+     * Create a game panel, played on the server if there is one, or
+     * driven by the shared loop if there is one, or by a loop of its own.
+     */
+    private GamePanel(final InfoPanel nipanel, final int nncolumns,
+		      final int nnrows, final BoardType btype, final int fps,
+		      final SharedLoop shared, final RemoteGame nremote) {
 	ipanel = nipanel;
 	ncolumns = nncolumns;
 	nrows = nnrows;
-	cells = new int[ncolumns][nrows];
+	remote = nremote;
+	snapshots = new SnapshotExchange(ncolumns, nrows);
+	if (remote != null) {
+	    loop = remote.join(snapshots, this::published);
+	    engine = null;
+	} else {
+	    loop = shared == null ? new GameLoop(this::advance)
+		: shared.join(this::advance);
+	    engine = new GameEngine(ncolumns, nrows, btype);
+	    engine.setRecording(true);
+	    engine.setTraced(true);
+	}
+	shown = new int[ncolumns * nrows];
 	Dimension gdim = new Dimension(ncolumns * CELLSIZE, nrows * CELLSIZE);
 	setMinimumSize(gdim);
 	setPreferredSize(gdim);
 	setMaximumSize(gdim);
-	addMouseListener(this);
-	getInputMap().put(KeyStroke.getKeyStroke("SPACE"),
+	if (fps > 0) {
+	    // the canvas takes the focus and the mouse events
+	    canvas = new ActiveRenderer(this, fps);
+	    canvas.setPreferredSize(gdim);
+	    canvas.addMouseListener(this);
+	    setLayout(new BorderLayout());
+	    add(canvas);
+	    getInputMap(WHEN_IN_FOCUSED_WINDOW).put(
+			KeyStroke.getKeyStroke("SPACE"), "pressed");
+	    getInputMap(WHEN_IN_FOCUSED_WINDOW).put(
+			KeyStroke.getKeyStroke("LEFT"), "back");
+	    getInputMap(WHEN_IN_FOCUSED_WINDOW).put(
+			KeyStroke.getKeyStroke("RIGHT"), "forward");
+	    getInputMap(WHEN_IN_FOCUSED_WINDOW).put(
+			KeyStroke.getKeyStroke("H"), "hint");
+	    getInputMap(WHEN_IN_FOCUSED_WINDOW).put(
+			KeyStroke.getKeyStroke("P"), "perf");
+	} else {
+	    canvas = null;
+	    addMouseListener(this);
+	    getInputMap().put(KeyStroke.getKeyStroke("SPACE"),
 			"pressed");
+	    getInputMap().put(KeyStroke.getKeyStroke("LEFT"), "back");
+	    getInputMap().put(KeyStroke.getKeyStroke("RIGHT"), "forward");
+	    getInputMap().put(KeyStroke.getKeyStroke("H"), "hint");
+	    getInputMap().put(KeyStroke.getKeyStroke("P"), "perf");
+	}
 	getActionMap().put("pressed", mstep);
+	getActionMap().put("back", mback);
+	getActionMap().put("forward", mforward);
+	getActionMap().put("hint", mhint);
+	getActionMap().put("perf", mperf);
 	newGame();
     }
 
-    /*
-     * If a cell contains 0, it's empty and isn't shown. If it is > 0, then
-     * the appropriate pattern for that cell is shown.
-     */
-    private void populate(final int itop) {
-	// make the cells at the top of the board empty
-	for (int i = 0; i < ncolumns; i++) {
-	    for (int j = 0; j < nrows - itop + 2; j++) {
-		cells[i][j] = 0;
-	    }
+    /**
+     * A multiple step.
+     */
+    AbstractAction mstep = new AbstractAction() {
+	@Override
+	public void actionPerformed(final ActionEvent e) {
+	    submit(Input.STEP, 6, 0, 0);
 	}
-	// then populate the bottom itop rows
-	cells[2][nrows - itop] = newCell();
-	cells[3][nrows - itop] = newCell();
-	cells[1][nrows - itop + 1] = newCell();
-	cells[2][nrows - itop + 1] = newCell();
-	cells[3][nrows - itop + 1] = newCell();
-	cells[4][nrows - itop + 1] = newCell();
-	for (int j = nrows - itop + 2; j < nrows; j++) {
-	    fill(j);
+    };
+
+    /**
+     * Jump back in a replay.
+     */
+    AbstractAction mback = new AbstractAction() {
+	@Override
+	public void actionPerformed(final ActionEvent e) {
+	    submit(Input.SEEK, (int) -Recording.KEYFRAME_TICKS, 0, 0);
 	}
-    }
+    };
 
-    private int newCell() {
-	double dl = (double) COLOURS.length - 2;
-	return (int) Math.floor(dl * Math.random() + 1.5d);
-    }
+    /**
+     * Jump forward in a replay.
+     */
+    AbstractAction mforward = new AbstractAction() {
+	@Override
+	public void actionPerformed(final ActionEvent e) {
+	    submit(Input.SEEK, (int) Recording.KEYFRAME_TICKS, 0, 0);
+	}
+    };
 
     /**
-     * A multiple step.
+     * Highlight a swap that would complete a run.
      */
-    AbstractAction mstep = new AbstractAction() {
+    AbstractAction mhint = new AbstractAction() {
 	@Override
 	public void actionPerformed(final ActionEvent e) {
-	    if (active) {
-		step();
-		step();
-		step();
-		step();
-		step();
-		step();
-	    }
+	    submit(Input.HINT, 0, 0, 0);
 	}
     };
 
-    /*
-     * Every time round the loop, we step up the screen. If a row reaches the
-     * top, we check to see if it contains any valid cells. If so, the game
-     * is lost. If not, we move the row counter down one, reset the partial
-     * row, populate the next row, and increase the speed.
+    /**
+     * Show or hide the performance figures.
      */
-    void step() {
-	multimatch = 0;
-	if (partrow == 0) {
-	    fill(toprow);
-	}
-	partrow++;
-	if (partrow == CELLSIZE) {
-	    partrow = 0;
-	    toprow++;
-	    if (toprow == nrows) {
-		toprow = 0;
-	    }
-	    endCheck();
-	    checkAll();
-	    upspeed();
+    AbstractAction mperf = new AbstractAction() {
+	@Override
+	public void actionPerformed(final ActionEvent e) {
+	    setPerformanceShown(!perfShown);
 	}
-	if (active) {
-	    warnCheck();
+    };
+
+    /*
+     * An input to be applied to the engine: a swap of two cells in a row,
+     * a number of steps, a jump by a number of ticks in a replay, or a
+     * request for a hint. For a swap, the two columns and the row. For a
+     * step or a jump, the number of steps or ticks in place of the first
+     * column. Inputs are reused rather than created for each click or key.
+     */
+    private static final class Input {
+	static final int SWAP = 0;
+	static final int STEP = 1;
+	static final int SEEK = 2;
+	static final int HINT = 3;
+	int kind;
+	int col1;
+	int col2;
+	int row;
+
+	void set(final int nkind, final int ncol1, final int ncol2,
+		 final int nrow) {
+	    kind = nkind;
+	    col1 = ncol1;
+	    col2 = ncol2;
+	    row = nrow;
 	}
-	repaint();
     }
 
     /*
-     * This checks if any cells in the very top row are populated. If so,
-     * the game is lost.
+     * Input waiting to be applied, added on the event thread and taken on
+     * the loop thread. The inputs are held in a fixed ring and copied in
+     * and out, so that queueing input doesn't allocate. The ring holds far
+     * more than anyone could click or type between two frames; should it
+     * ever fill, further input is dropped.
      */
-    private void endCheck() {
-	int lost = 0;
-	for (int i = 0; i < ncolumns; i++) {
-	    lost += cells[i][toprow];
+    private static final class InputQueue {
+	private static final int SIZE = 64;
+	private final Input[] ring = new Input[SIZE];
+	private int head;
+	private int count;
+
+	InputQueue() {
+	    for (int i = 0; i < SIZE; i++) {
+		ring[i] = new Input();
+	    }
 	}
-	if (lost > 0) {
-	    ipanel.setMessage("Game Over!");
-	    bgcolor = Color.BLACK;
-	    active = false;
-	    stopLoop();
+
+	synchronized void add(final int kind, final int col1, final int col2,
+			      final int row) {
+	    if (count < SIZE) {
+		ring[(head + count) % SIZE].set(kind, col1, col2, row);
+		count++;
+	    }
+	}
+
+	/*
+	 * Copy the oldest input into the given one, returning false if
+	 * there isn't any.
+	 */
+	synchronized boolean poll(final Input in) {
+	    if (count == 0) {
+		return false;
+	    }
+	    Input first = ring[head];
+	    in.set(first.kind, first.col1, first.col2, first.row);
+	    head = (head + 1) % SIZE;
+	    count--;
+	    return true;
+	}
+
+	synchronized void clear() {
+	    head = 0;
+	    count = 0;
 	}
     }
 
     /*
-     * This checks whether we have any cells within 1 row of hitting the top.
-     * If so, the background flashes.
+     * Pass input to the engine. If the loop isn't running, there's nothing
+     * to pick it up, so apply it straight away. A game on a server is
+     * sent its swaps and steps instead.
      */
-    private void warnCheck() {
-	int nrow = toprow + 1;
-	if (nrow == nrows) {
-	    nrow = 0;
-	}
-	int lost = 0;
-	for (int i = 0; i < ncolumns; i++) {
-	    lost += cells[i][nrow];
+    private void submit(final int kind, final int col1, final int col2,
+			final int row) {
+	if (remote != null) {
+	    if (kind == Input.SWAP) {
+		remote.swap(col1, col2, row);
+	    } else if (kind == Input.STEP) {
+		remote.step(col1);
+	    }
+	    return;
 	}
-	if (lost > 0) {
-	    iwarn++;
-	    if (iwarn >= COLOURS.length) {
-		iwarn = 0;
+	input.add(kind, col1, col2, row);
+	if (!loop.isRunning() && runInput()) {
+	    sync();
+	    // a replay that had finished may have been taken back
+	    if (replay != null && !replay.isFinished()) {
+		startLoop();
 	    }
-	    bgcolor = COLOURS[iwarn].darker();
-	} else {
-	    bgcolor = COLOURS[0];
 	}
     }
 
     /*
-     * Clear a horizontal line, and move down all the rows above it.
+     * Apply any waiting input to the engine. Returns true if anything was
+     * applied.
      */
-    private void clearHmatch(final int i, final int srow, final int nscore) {
-	int iscore = nscore;
-	// we know it starts at i, but where does it finish
-	int imax = i;
-	while (imax < ncolumns && cells[i][srow] == cells[imax][srow]) {
-	    imax++;
-	}
-	// imax is one extra, but this is accounted for in the loop
-	// below
-	for (int irow = i; irow < imax; irow++) {
-	    shuffleDown(irow, srow);
-	    iscore *= 2;
+    private boolean runInput() {
+	boolean ran = false;
+	Input in = applying;
+	while (input.poll(in)) {
+	    if (in.kind == Input.HINT) {
+		int hint = engine.getHint();
+		hinted = ((long) engine.getChangeCount() << 32)
+		    | (hint & 0xffffffffL);
+		ran = true;
+	    } else if (in.kind == Input.SEEK) {
+		if (replay != null) {
+		    replay.seek(Math.max(0L, engine.getTicks() + in.col1));
+		    ran = true;
+		}
+	    } else if (replay == null && engine.isActive()) {
+		if (in.kind == Input.STEP) {
+		    for (int k = 0; k < in.col1 && engine.isActive(); k++) {
+			engine.step();
+		    }
+		} else {
+		    engine.swap(in.col1, in.col2, in.row);
+		}
+		ran = true;
+	    }
 	}
-	addScore(iscore);
-	checkAll();
+	return ran;
+    }
+
+    /*
+     * Step the engine up the screen and show the result. Only for use
+     * while the loop is stopped.
+     */
+    void step() {
+	engine.step();
+	sync();
     }
 
     /*
-     * Clear a vertical line.
+     * Bring the display up to date with the engine. Only for use while the
+     * loop is stopped.
      */
-    private void clearVmatch(final int i, final int j, final int nscore) {
-	int val = cells[i][j];
-	int iscore = nscore;
-	while (cells[i][j] == val) {
-	    shuffleDown(i, j);
-	    iscore *= 2;
+    void sync() {
+	snapshots.publish(engine);
+	if (canvas == null) {
+	    refresh();
 	}
-	addScore(iscore);
-	checkAll();
     }
 
     /*
-     * Shuffle a row down 1 place, starting at row srow of column i.
-     * Used when clearing a horizontal line.
-     */
-    private void shuffleDown(final int i, final int srow) {
-	int irow = srow;
-	int trow = srow - 1;
-	if (irow < 0) {
-	    irow += nrows;
-	}
-	if (trow < 0) {
-	    trow += nrows;
-	}
-	while (trow != toprow) {
-	    cells[i][irow] = cells[i][trow];
-	    irow--;
-	    trow--;
-	    if (irow < 0) {
-		irow += nrows;
+     * Run on the loop thread, to apply any input and run the engine for
+     * the given number of ticks of its clock, publishing the result if
+     * anything changed. When replaying, the replay is run instead. Once
+     * the game or replay is over there's nothing more for the loop to do,
+     * so it stops itself.
+     */
+    private void advance(final int nticks) {
+	ticksrun.addAndGet(nticks);
+	boolean changed = runInput();
+	if (replay != null) {
+	    if (nticks > 0 && !replay.isFinished()) {
+		replay.advance(nticks);
+		changed = true;
+	    }
+	} else {
+	    if (garbage > 0) {
+		engine.addGarbage(garbage);
+		garbage = 0;
+		changed = true;
+	    }
+	    int before = engine.getChangeCount();
+	    for (int k = 0; k < nticks && engine.isActive(); k++) {
+		if (bot != null) {
+		    bot.play(engine);
+		}
+		if (engine.tick() > 0) {
+		    changed = true;
+		}
 	    }
-	    if (trow < 0) {
-		trow += nrows;
+	    // the bot may have changed the board without the clock
+	    if (engine.getChangeCount() != before) {
+		changed = true;
 	    }
 	}
-	cells[i][irow] = 0;
+	if (changed) {
+	    snapshots.publish(engine);
+	    published();
+	}
+	if (replay != null ? replay.isFinished() : !engine.isActive()) {
+	    loop.stop();
+	}
     }
 
-    private void upspeed() {
-	delay -= 3;
-	timer.setDelay(delay);
-	level++;
-	ipanel.setSpeed(level);
+    /*
+     * Called wherever a snapshot has been published, to have it shown.
+     */
+    private void published() {
+	// an active renderer picks up the snapshot by itself
+	if (canvas == null && pending.compareAndSet(false, true)) {
+	    SwingUtilities.invokeLater(showLatest);
+	}
     }
 
-    private void fill(final int irow) {
-	for (int i = 0; i < ncolumns; i++) {
-	    cells[i][irow] = newCell();
+    /*
+     * Run on the event thread to show the latest snapshot.
+     */
+    private void showSnapshot() {
+	pending.set(false);
+	refresh();
+    }
+
+    /*
+     * If we have any cells within 1 row of hitting the top, the background
+     * flashes.
+     */
+    private void warnCheck(final boolean warning) {
+	if (warning) {
+	    iwarn++;
+	    if (iwarn >= COLOURS.length) {
+		iwarn = 0;
+	    }
+	    bgcolor = WARNCOLOURS[iwarn];
+	} else {
+	    bgcolor = COLOURS[0];
 	}
     }
 
@@ -355,77 +721,180 @@ public final class GamePanel extends JPanel implements ActionListener,
      * Request a new game.
      */
     public void newGame() {
-	stopLoop();
-	level = START_LEVEL;
-	delay = START_DELAY;
-	bgcolor = COLOURS[0];
-	toprow = 0;
-	partrow = 0;
-	populate(3);
-	active = true;
-	startLoop();
-	ipanel.setSpeed(level);
-	score = 0;
-	ipanel.setScore(score);
-	ipanel.setMessage("");
+	newGame(ThreadLocalRandom.current().nextLong());
     }
 
-    private void startLoop() {
-	if (timer == null) {
-	    timer = new Timer(delay, this);
+    /**
+     * Request a new game, with the given seed.
+     *
+     * @param seed the seed for the cells in the new game
+     */
+    public void newGame(final long seed) {
+	if (remote != null) {
+	    status = "";
+	    remote.newGame(seed);
+	    startLoop();
+	    return;
+	}
+	stopLoop();
+	input.clear();
+	replay = null;
+	hinted = -1L;
+	garbage = 0;
+	engine.newGame(seed);
+	if (bot != null) {
+	    bot.newGame(engine);
 	}
-	timer.start();
+	status = "";
+	sync();
+	startLoop();
     }
 
-    private void stopLoop() {
-	if (timer != null) {
-	    timer.stop();
-	}
+    /**
+     * Play back a recorded game, which must be the same size as this
+     * panel, in place of the current game. The left and right arrow keys
+     * jump back and forward through the replay.
+     *
+     * @param recording the recording to play back
+     */
+    public void replay(final Recording recording) {
+	checkLocal();
+	stopLoop();
+	input.clear();
+	replay = new Replay(recording, engine);
+	garbage = 0;
+	status = "Replay";
+	sync();
+	startLoop();
     }
 
-    private void checkAll() {
-	// horizontal rows
-	for (int i = 0; i < ncolumns - 2; i++) {
-	    for (int j = 0; j < nrows; j++) {
-		if (j == toprow) {
-		    continue;
-		}
-		if (cells[i][j] != 0
-			    && cells[i][j] == cells[i + 1][j]
-			    && cells[i][j] == cells[i + 2][j]) {
-		    clearHmatch(i, j, 10);
+    /**
+     * Save a recording of the current game, up to now, or of the game being
+     * replayed.
+     *
+     * @param out where to write the recording
+     *
+     * @throws IOException if the recording can't be written
+     */
+    public void saveRecording(final OutputStream out) throws IOException {
+	checkLocal();
+	boolean running = loop.isRunning();
+	stopLoop();
+	try {
+	    Recording recording;
+	    if (replay != null) {
+		recording = replay.getRecording();
+	    } else {
+		recording = engine.getRecording();
+		if (engine.isActive()) {
+		    recording.setEnd(engine.getTicks());
 		}
 	    }
-	}
-	// vertical rows
-	for (int i = 0; i < ncolumns; i++) {
-	    //for (int j = 0; j < nrows; j++) {
-	    for (int j = nrows - 1; j >= 0; j--) {
-		if (j == toprow) {
-		    continue;
-		}
-		// FIXME handle more than 3
-		int row1 = j - 1;
-		if (row1 == -1) {
-		    row1 = nrows - 1;
-		}
-		int row2 = row1 - 1;
-		if (row2 == -1) {
-		    row2 = nrows - 1;
-		}
-		if (cells[i][j] != 0
-			    && cells[i][j] == cells[i][row1]
-			    && cells[i][j] == cells[i][row2]) {
-		    clearVmatch(i, j, 10);
-		}
+	    recording.write(out);
+	} finally {
+	    if (running) {
+		startLoop();
 	    }
 	}
     }
 
-    private void addScore(final int i) {
-	multimatch++;
-	score += i * multimatch;
-	ipanel.setScore(score);
+    /**
+     * Have a bot play the game, making its moves alongside any made with
+     * the mouse.
+     *
+     * @param nbot the bot to play the game, or null to stop the current
+     * bot playing
+     */
+    public void setBot(final Bot nbot) {
+	checkLocal();
+	boolean running = loop.isRunning();
+	stopLoop();
+	bot = nbot;
+	if (bot != null) {
+	    bot.newGame(engine);
+	}
+	if (running) {
+	    startLoop();
+	}
+    }
+
+    /**
+     * Choose whether to show how smoothly the game is running: the rate
+     * of the game clock, the time between frames, how far the game loop
+     * falls behind, and garbage collection. The figures are brought up
+     * to date once a second while frames are being drawn.
+     *
+     * @param shown true to show the performance figures
+     */
+    public void setPerformanceShown(final boolean shown) {
+	perfShown = shown;
+	ipanel.setPerformanceShown(shown);
+    }
+
+    @Override
+    public void removeNotify() {
+	// nothing more to show
+	stopLoop();
+	super.removeNotify();
+    }
+
+    /*
+     * Games played on a server can only be shown and played.
+     */
+    private void checkLocal() {
+	if (remote != null) {
+	    throw new UnsupportedOperationException(
+		"Not available for a game played on a server");
+	}
+    }
+
+    private void startLoop() {
+	loop.start();
+    }
+
+    void stopLoop() {
+	loop.stop();
+    }
+
+    /*
+     * Send rows of garbage to this game, to be pushed onto the board on
+     * the next frame. Only for use on the loop thread.
+     */
+    void addGarbage(final int nrows) {
+	garbage += nrows;
+    }
+
+    /*
+     * Set the message to show while the game is in progress.
+     */
+    void setStatus(final String s) {
+	status = s;
+    }
+
+    /*
+     * Report whether the loop is running this game. Once it isn't, the
+     * loop won't touch the game again until it's restarted.
+     */
+    boolean isRunning() {
+	return loop.isRunning();
+    }
+
+    /**
+     * Get the engine running this game.
+     *
+     * @return the GameEngine for this game, null if it is played on a
+     * server
+     */
+    GameEngine getEngine() {
+	return engine;
+    }
+
+    /*
+     * Called by the active renderer with the number of frames dropped so
+     * far.
+     */
+    void droppedFrames(final long dropped) {
+	SwingUtilities.invokeLater(() -> ipanel.setDropped(dropped));
     }
 
     // MouseListener
@@ -452,26 +921,26 @@ public final class GamePanel extends JPanel implements ActionListener,
 
     @Override
     public void mousePressed(final MouseEvent e) {
-	if (!active) {
+	// hit test against what's on screen, not wherever the engine is now
+	if (!displayedActive || replay != null) {
 	    return;
 	}
-	int colnew = -4;
-	int rownew = -4;
 	int x = e.getX();
 	int y = e.getY();
-	for (int i = 0; i < ncolumns; i++) {
-	    int istart = i * CELLSIZE;
-	    if (x >= istart && x < (istart + CELLSIZE)) {
-		colnew = i;
-	    }
-	    for (int j = 0; j < nrows; j++) {
-		int jstart = (j - toprow) * CELLSIZE - partrow;
-		if (jstart < 0) {
-		    jstart += nrows * CELLSIZE;
-		}
-		if (y >= jstart && y < (jstart + CELLSIZE)) {
-		    rownew = j;
-		}
+	int offset = displayed;
+	int toprow = offset / CELLSIZE;
+	int partrow = offset % CELLSIZE;
+	int colnew = x >= 0 && x < ncolumns * CELLSIZE ? x / CELLSIZE : -4;
+	int rownew = -4;
+	if (y >= 0) {
+	    // the rows are drawn counting down from toprow, shifted up by
+	    // partrow, so toprow itself is at the bottom, or at the very top
+	    // before it has started to rise
+	    int n = (y + partrow) / CELLSIZE;
+	    if (n >= nrows) {
+		rownew = toprow;
+	    } else if (n > 0 || partrow == 0) {
+		rownew = (toprow + n) % nrows;
 	    }
 	}
 	// don't allow moving blocks in the partially visible row
@@ -481,97 +950,327 @@ public final class GamePanel extends JPanel implements ActionListener,
 	// so, we know where we are. if the previous click was valid, and
 	// we're on the same row, and we're on neighbouring columns, swap the
 	// cells
+	int sel = selected;
+	int rowclick = sel < 0 ? -2 : sel / ncolumns;
+	int colclick = sel < 0 ? -2 : sel % ncolumns;
 	if (rowclick == rownew
-	        && (colclick == colnew + 1 || colclick == colnew - 1)) {
-	    // swap cells
-	    int itmp = cells[colclick][rowclick];
-	    cells[colclick][rowclick] = cells[colnew][rownew];
-	    cells[colnew][rownew] = itmp;
-	    // if an empty cell, shuffle down anything above it
-	    if (cells[colclick][rowclick] == 0) {
-		shuffleDown(colclick, rowclick);
-	    }
-	    if (cells[colnew][rownew] == 0) {
-		shuffleDown(colnew, rownew);
+		&& (colclick == colnew + 1 || colclick == colnew - 1)) {
+	    selected = -1;
+	    if (canvas == null) {
+		refresh();
 	    }
-	    // if we end up over an empty cell, drop down
-	    int rowbelow = rownew + 1;
-	    if (rowbelow == nrows) {
-		rowbelow = 0;
+	    submit(Input.SWAP, colclick, colnew, rownew);
+	    return;
+	}
+	// save this one for next time
+	selected = colnew < 0 || rownew < 0 ? -1 : rownew * ncolumns + colnew;
+	if (canvas == null) {
+	    refresh();
+	}
+    }
+
+    /*
+     * Bring the frame up to date with the engine, and request a repaint of
+     * the parts of the panel that have changed. If the board has risen
+     * since the last update, the existing frame is scrolled up to match,
+     * and the whole board repainted, but only the newly exposed partial
+     * row and any cells that have changed are drawn. Otherwise, just the
+     * changed cells are drawn and repainted; if the board itself hasn't
+     * changed, only the selection or hint can have moved, so only the
+     * previously and currently highlighted cells need to be looked at.
+     */
+    void refresh() {
+	PaintEvent event = null;
+	if (PaintEvent.TYPE.isEnabled()) {
+	    event = new PaintEvent();
+	    event.begin();
+	}
+	snap = snapshots.latest();
+	boolean full = checkFrame();
+	int width = ncolumns * CELLSIZE;
+	int height = nrows * CELLSIZE;
+	int toprow = snap.toprow;
+	int partrow = snap.partrow;
+	int offset = toprow * CELLSIZE + partrow;
+	if (!snap.active) {
+	    bgcolor = Color.BLACK;
+	} else if (offset != shownoffset || bgcolor == Color.BLACK) {
+	    warnCheck(snap.warning);
+	}
+	drawsel = selected;
+	long hint = hinted;
+	drawhint = (int) (hint >>> 32) == snap.changes ? (int) hint : -1;
+	if (!bgcolor.equals(shownbg)) {
+	    full = true;
+	}
+	boolean scrolled = false;
+	if (!full && offset != shownoffset) {
+	    int d = offset - shownoffset;
+	    if (d < 0) {
+		d += height;
 	    }
-	    while (rowbelow != toprow && cells[colnew][rowbelow] == 0) {
-		cells[colnew][rowbelow] = cells[colnew][rownew];
-		cells[colnew][rownew] = 0;
-		rowbelow++;
-		rownew++;
-		if (rowbelow == nrows) {
-		    rowbelow = 0;
-		}
-		if (rownew == nrows) {
-		    rownew = 0;
-		}
+	    int dd = (int) Math.round(d * framescale);
+	    if (d < CELLSIZE && dd == d * framescale) {
+		int dh = (int) Math.round(height * framescale);
+		framecopy.copyArea(0, dd, frame.getWidth(), dh - dd, 0, -dd);
+		scrolled = true;
+	    } else {
+		full = true;
 	    }
-	    rowbelow = rowclick + 1;
-	    if (rowbelow == nrows) {
-		rowbelow = 0;
+	}
+	if (full) {
+	    frameg.setColor(bgcolor);
+	    frameg.fillRect(0, 0, width, height);
+	    for (int k = 0; k < shown.length; k++) {
+		shown[k] = -1;
 	    }
-	    while (rowbelow != toprow && cells[colclick][rowbelow] == 0) {
-		cells[colclick][rowbelow] = cells[colclick][rowclick];
-		cells[colclick][rowclick] = 0;
-		rowbelow++;
-		rowclick++;
-		if (rowbelow == nrows) {
-		    rowbelow = 0;
+	} else if (scrolled) {
+	    // the partial row has moved independently of the scroll, and
+	    // may have left part of itself behind
+	    invalidateRow(toprow);
+	    invalidateRow(showntop);
+	}
+	sprites.validate(frameg.getDeviceConfiguration());
+	int xmin = width;
+	int ymin = height;
+	int xmax = 0;
+	int ymax = 0;
+	int drawn = 0;
+	int changes = snap.changes;
+	if (!full && !scrolled && changes == shownchanges) {
+	    highlit[0] = shownsel;
+	    highlit[1] = drawsel;
+	    highlit[2] = shownhint;
+	    highlit[3] = shownhint < 0 ? -1 : shownhint + 1;
+	    highlit[4] = drawhint;
+	    highlit[5] = drawhint < 0 ? -1 : drawhint + 1;
+	    for (int sel : highlit) {
+		int i = sel % ncolumns;
+		int j = sel / ncolumns;
+		if (sel >= 0 && updateCell(i, j)) {
+		    drawn++;
+		    int istart = i * CELLSIZE;
+		    int jstart = cellY(j);
+		    xmin = Math.min(xmin, istart);
+		    ymin = Math.min(ymin, jstart);
+		    xmax = Math.max(xmax, istart + CELLSIZE);
+		    ymax = Math.max(ymax, jstart + CELLSIZE);
 		}
-		if (rowclick == nrows) {
-		    rowclick = 0;
+	    }
+	} else {
+	    for (int j = 0; j < nrows; j++) {
+		int jstart = cellY(j);
+		for (int i = 0; i < ncolumns; i++) {
+		    if (updateCell(i, j)) {
+			drawn++;
+			int istart = i * CELLSIZE;
+			xmin = Math.min(xmin, istart);
+			ymin = Math.min(ymin, jstart);
+			xmax = Math.max(xmax, istart + CELLSIZE);
+			ymax = Math.max(ymax, jstart + CELLSIZE);
+		    }
 		}
 	    }
+	}
+	shownoffset = offset;
+	showntop = toprow;
+	shownbg = bgcolor;
+	shownchanges = changes;
+	shownsel = drawsel;
+	shownhint = drawhint;
+	displayed = offset;
+	displayedActive = snap.active;
+	showInfo(measure());
+	if (event != null) {
+	    event.cells = drawn;
+	    event.full = full;
+	    event.scrolled = scrolled;
+	    event.commit();
+	}
+	if (canvas != null) {
+	    return;
+	}
+	if (full || scrolled) {
 	    repaint();
-	    rowclick = -2;
-	    colclick = -2;
-	    checkAll();
+	} else if (xmin < xmax) {
+	    repaint(xmin, ymin, xmax - xmin, ymax - ymin);
+	}
+    }
+
+    /*
+     * Bring the InfoPanel up to date with the snapshot being drawn, if
+     * anything it shows has changed. However many matches and levels the
+     * engine has been through since the last frame, the panel only sees
+     * where it has got to. The active renderer hands over to the event
+     * thread, without allocating anything unless no update is already
+     * waiting there. New performance figures force an update.
+     */
+    private void showInfo(final boolean newperf) {
+	String msg = snap.active ? status : "Game Over!";
+	if (!newperf && snap.score == infoscore && snap.level == infolevel
+		&& snap.combo == infocombo && snap.runs == inforuns
+		&& msg.equals(infomsg)) {
 	    return;
 	}
-	// save this one for next time
-	rowclick = rownew;
-	colclick = colnew;
+	infoscore = snap.score;
+	infolevel = snap.level;
+	infocombo = snap.combo;
+	inforuns = snap.runs;
+	infomsg = msg;
+	if (canvas == null) {
+	    updateInfo();
+	} else if (infopending.compareAndSet(false, true)) {
+	    SwingUtilities.invokeLater(showInfoLater);
+	}
     }
 
-    // ActionListener
-    @Override
-    public void actionPerformed(final ActionEvent e) {
-	if (active) {
-	    step();
+    /*
+     * Show the latest values in the InfoPanel, on the event thread.
+     */
+    private void updateInfo() {
+	infopending.set(false);
+	ipanel.setProgress(infoscore, infolevel, infocombo, inforuns, infomsg);
+	if (perfShown) {
+	    ipanel.setPerformance(perf.getTicksPerSecond(),
+				  perf.getFrameMedian(), perf.getFrame99(),
+				  perf.getLag(), perf.getCollections(),
+				  perf.getCollectionTime());
 	}
     }
 
+    /*
+     * Count the frame being drawn towards the performance figures, if
+     * they're shown. Returns true if there are new figures to show.
+     */
+    private boolean measure() {
+	if (!perfShown) {
+	    perf.reset();
+	    return false;
+	}
+	return perf.frame(System.nanoTime(), ticksrun.get(),
+			  loop.takeLateness());
+    }
+
+    /*
+     * The y coordinate of the top of row j on the panel.
+     */
+    private int cellY(final int j) {
+	int y = (j - snap.toprow) * CELLSIZE - snap.partrow;
+	return y < 0 ? y + nrows * CELLSIZE : y;
+    }
+
+    /*
+     * Draw the cell at column i of row j into the frame if it isn't
+     * already showing what it should. Returns true if the cell was drawn.
+     */
+    private boolean updateCell(final int i, final int j) {
+	int cell = snap.getCell(i, j);
+	int key = 0;
+	if (cell > 0) {
+	    int k = j * ncolumns + i;
+	    if (k == drawsel
+		    || drawhint >= 0 && (k == drawhint || k == drawhint + 1)) {
+		key = cell | SpriteCache.HIGHLIGHT << 4;
+	    } else if (j == snap.toprow) {
+		key = cell | SpriteCache.SHADED << 4;
+	    } else {
+		key = cell | SpriteCache.NORMAL << 4;
+	    }
+	}
+	if (shown[j * ncolumns + i] == key) {
+	    return false;
+	}
+	shown[j * ncolumns + i] = key;
+	drawCell(i * CELLSIZE, cellY(j), key);
+	return true;
+    }
+
+    private void invalidateRow(final int j) {
+	for (int k = j * ncolumns; k < (j + 1) * ncolumns; k++) {
+	    shown[k] = -1;
+	}
+    }
+
+    /*
+     * Draw a cell into the frame, with its top left corner at x, y. The
+     * key holds the value of the cell in the low bits, 0 if empty, and
+     * the sprite variant above that.
+     */
+    private void drawCell(final int x, final int y, final int key) {
+	frameg.setColor(bgcolor);
+	frameg.fillRect(x, y, CELLSIZE, CELLSIZE);
+	int cell = key & 0xf;
+	if (cell > 0) {
+	    int variant = key >> 4;
+	    if (variant == SpriteCache.HIGHLIGHT) {
+		frameg.drawImage(sprites.get(cell, variant), x, y,
+				 CELLSIZE, CELLSIZE, null);
+	    } else {
+		frameg.drawImage(sprites.get(cell, variant), x + 1, y + 1,
+				 CELLP, CELLP, null);
+	    }
+	}
+    }
+
+    /*
+     * Make sure we have a frame compatible with where we're being
+     * displayed, at the right scale. Returns true if a new frame was
+     * created, which will need drawing from scratch.
+     */
+    private boolean checkFrame() {
+	GraphicsConfiguration gc = getGraphicsConfiguration();
+	if (frame != null && (gc == null || gc.equals(framegc))) {
+	    return false;
+	}
+	if (frameg != null) {
+	    frameg.dispose();
+	    framecopy.dispose();
+	}
+	int width = ncolumns * CELLSIZE;
+	int height = nrows * CELLSIZE;
+	if (gc == null) {
+	    framescale = 1.0;
+	    frame = new BufferedImage(width, height,
+				      BufferedImage.TYPE_INT_RGB);
+	} else {
+	    framescale = gc.getDefaultTransform().getScaleY();
+	    frame = gc.createCompatibleImage(
+		(int) Math.ceil(width * framescale),
+		(int) Math.ceil(height * framescale));
+	}
+	framegc = gc;
+	framecopy = frame.createGraphics();
+	frameg = frame.createGraphics();
+	frameg.scale(framescale, framescale);
+	return true;
+    }
+
+    /*
+     * Draw the frame, whose contents must be up to date, onto the screen.
+     * Returns false if it needs drawing again because sprites were lost
+     * while it was being drawn, in which case it has been refreshed.
+     */
+    boolean drawFrame(final Graphics g) {
+	g.drawImage(frame, 0, 0, ncolumns * CELLSIZE, nrows * CELLSIZE,
+		    null);
+	if (sprites.contentsLost()) {
+	    shownbg = null;
+	    refresh();
+	    return false;
+	}
+	return true;
+    }
+
     @Override
     public void paint(final Graphics g) {
-	Graphics2D g2 = (Graphics2D) g;
-	Dimension d = getSize();
-	g2.setColor(bgcolor);
-	g2.fillRect(0, 0, d.width, d.height);
-	for (int i = 0; i < ncolumns; i++) {
-	    int istart = i * CELLSIZE + 1;
-	    for (int j = 0; j < nrows; j++) {
-		if (cells[i][j] > 0) {
-		    int jstart = (j - toprow) * CELLSIZE - partrow;
-		    if (jstart < 0) {
-			jstart += nrows * CELLSIZE;
-		    }
-		    jstart++;
-		    // highlight the currently clicked cell with a border
-		    if (i == colclick && j == rowclick) {
-			g2.setColor(CLICKCOLOR);
-			g2.fillRect(istart - 1, jstart - 1, CELLSIZE, CELLSIZE);
-		    }
-		    // the partially visible row is shaded
-		    g2.setColor((j == toprow) ? COLOURS[cells[i][j]].darker()
-				: COLOURS[cells[i][j]]);
-		    g2.fill3DRect(istart, jstart, CELLP, CELLP, true);
-		}
-	    }
+	if (canvas != null) {
+	    // the canvas draws itself
+	    super.paint(g);
+	    return;
+	}
+	if (frame == null) {
+	    refresh();
 	}
+	drawFrame(g);
     }
 }
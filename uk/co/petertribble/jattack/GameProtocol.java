@@ -0,0 +1,415 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The messages passed between a GameServer and its clients. Each message
+ * is its length, then a byte giving its type, then its body. Lengths and
+ * numbers are written as varints, 7 bits to a byte, low bits first, with
+ * the top bit set on every byte but the last.
+ *
+ * A client first sends JOIN with the size of board it wants, and the
+ * server answers with START. From then on the client sends NEW, the two
+ * kinds of SWAP, and STEP as it plays, and the server sends a DELTA once
+ * a frame if the game has changed. A delta holds only what differs from
+ * the delta before: a bit for each field present, the fields, and then
+ * the cells that have changed, each as its distance from the previous
+ * one and its new value, which fit a single byte for cells less than 16
+ * apart. A frame in which the board has only risen costs 4 bytes.
+ */
+final class GameProtocol {
+
+    /**
+     * Client: ask to play, with the number of columns and rows.
+     */
+    static final int JOIN = 1;
+    /**
+     * Client: start a new game, with the seed.
+     */
+    static final int NEW = 2;
+    /**
+     * Client: swap a cell with the one to its right, given as row *
+     * columns + column.
+     */
+    static final int SWAP_RIGHT = 3;
+    /**
+     * Client: swap a cell with the one to its left, given as row *
+     * columns + column of the left cell.
+     */
+    static final int SWAP_LEFT = 4;
+    /**
+     * Client: step the board up, with the number of steps.
+     */
+    static final int STEP = 5;
+    /**
+     * Server: the game is ready, with the number of columns and rows.
+     */
+    static final int START = 16;
+    /**
+     * Server: the changes to the game since the last delta.
+     */
+    static final int DELTA = 17;
+
+    /**
+     * Delta flags: whether the game is in progress, and whether it is
+     * close to the top, which are always given.
+     */
+    static final int ACTIVE = 1;
+    static final int WARNING = 2;
+    /**
+     * Delta flags: which of the fields that follow are present, the
+     * ones changing most often taking the lower bits, so that the flags
+     * usually fit a single byte. The cells always come last.
+     */
+    static final int PARTROW = 4;
+    static final int TOPROW = 8;
+    static final int CELLS = 16;
+    static final int SCORE = 32;
+    static final int COMBO = 64;
+    static final int LEVEL = 128;
+    static final int RUNS = 256;
+
+    /**
+     * The smallest board a client may ask for.
+     */
+    static final int MIN_COLUMNS = GameEngine.MIN_COLUMNS;
+    static final int MIN_ROWS = GameEngine.MIN_ROWS;
+    /**
+     * The largest board a client may ask for.
+     */
+    static final int MAX_COLUMNS = 64;
+    static final int MAX_ROWS = 256;
+    /**
+     * The largest message a client sends, with its length.
+     */
+    static final int MAX_CLIENT_MESSAGE = 16;
+
+    /**
+     * The room left at the start of a buffer for the length of the
+     * message, which is only known once the message has been written.
+     */
+    private static final int LENGTH_ROOM = 3;
+
+    private GameProtocol() {
+    }
+
+    /**
+     * Work out the largest message the server can send for a board, with
+     * its length: the header, every field, and every cell changing.
+     *
+     * @param ncolumns the number of columns on the board
+     * @param nrows the number of rows on the board
+     *
+     * @return the largest possible message, in bytes
+     */
+    static int maxMessage(final int ncolumns, final int nrows) {
+	return LENGTH_ROOM + 3 + 6 * 5 + 3 * ncolumns * nrows + 1;
+    }
+
+    /**
+     * Start writing a message into an empty buffer.
+     *
+     * @param out the buffer to write to
+     * @param type the type of message
+     */
+    static void begin(final ByteBuffer out, final int type) {
+	out.clear();
+	out.position(LENGTH_ROOM);
+	out.put((byte) type);
+    }
+
+    /**
+     * Finish a message started with begin, leaving the buffer holding
+     * the whole message, ready to be written out.
+     *
+     * @param out the buffer holding the message
+     */
+    static void end(final ByteBuffer out) {
+	int last = out.position();
+	int length = last - LENGTH_ROOM;
+	int first = LENGTH_ROOM - varintSize(length);
+	out.position(first);
+	putVarint(out, length);
+	out.limit(last);
+	out.position(first);
+    }
+
+    /**
+     * Find the next message in a buffer ready for reading. If it has all
+     * arrived, its length is read, leaving the buffer at its type byte;
+     * otherwise the buffer is left where it was.
+     *
+     * @param in the buffer holding the messages received
+     *
+     * @return the position of the end of the message, or -1 if it
+     * hasn't all arrived
+     *
+     * @throws IOException if the message is too long for the buffer
+     */
+    static int next(final ByteBuffer in) throws IOException {
+	int start = in.position();
+	int length = 0;
+	for (int shift = 0; ; shift += 7) {
+	    if (!in.hasRemaining()) {
+		in.position(start);
+		return -1;
+	    }
+	    int b = in.get();
+	    length |= (b & 0x7f) << shift;
+	    if (b >= 0) {
+		break;
+	    } else if (shift > 14) {
+		throw new IOException("Bad message length");
+	    }
+	}
+	if (length == 0 || length > in.capacity() - LENGTH_ROOM) {
+	    throw new IOException("Bad message length");
+	}
+	if (in.remaining() < length) {
+	    in.position(start);
+	    return -1;
+	}
+	return in.position() + length;
+    }
+
+    /**
+     * Write a non-negative number as a varint.
+     *
+     * @param out the buffer to write to
+     * @param v the number
+     */
+    static void putVarint(final ByteBuffer out, final int v) {
+	int n = v;
+	while ((n & ~0x7f) != 0) {
+	    out.put((byte) (n & 0x7f | 0x80));
+	    n >>>= 7;
+	}
+	out.put((byte) n);
+    }
+
+    /**
+     * Read a non-negative number written as a varint, which must end
+     * before the end of the message.
+     *
+     * @param in the buffer to read from
+     * @param end the position of the end of the message
+     *
+     * @return the number
+     *
+     * @throws IOException if the number is malformed
+     */
+    static int getVarint(final ByteBuffer in, final int end)
+	    throws IOException {
+	int v = 0;
+	for (int shift = 0; shift < 32; shift += 7) {
+	    if (in.position() >= end) {
+		break;
+	    }
+	    int b = in.get();
+	    v |= (b & 0x7f) << shift;
+	    if (b >= 0) {
+		if (v < 0) {
+		    break;
+		}
+		return v;
+	    }
+	}
+	throw new IOException("Bad number in message");
+    }
+
+    /**
+     * Write any long, such as a seed, as a zigzag varint.
+     *
+     * @param out the buffer to write to
+     * @param v the number
+     */
+    static void putLong(final ByteBuffer out, final long v) {
+	long n = v << 1 ^ v >> 63;
+	while ((n & ~0x7fL) != 0) {
+	    out.put((byte) (n & 0x7f | 0x80));
+	    n >>>= 7;
+	}
+	out.put((byte) n);
+    }
+
+    /**
+     * Read a long written by putLong, which must end before the end of
+     * the message.
+     *
+     * @param in the buffer to read from
+     * @param end the position of the end of the message
+     *
+     * @return the number
+     *
+     * @throws IOException if the number is malformed
+     */
+    static long getLong(final ByteBuffer in, final int end)
+	    throws IOException {
+	long n = 0;
+	for (int shift = 0; shift < 64; shift += 7) {
+	    if (in.position() >= end) {
+		break;
+	    }
+	    int b = in.get();
+	    n |= (long) (b & 0x7f) << shift;
+	    if (b >= 0) {
+		return n >>> 1 ^ -(n & 1);
+	    }
+	}
+	throw new IOException("Bad number in message");
+    }
+
+    private static int varintSize(final int v) {
+	int size = 1;
+	for (int n = v >>> 7; n != 0; n >>>= 7) {
+	    size++;
+	}
+	return size;
+    }
+
+    /**
+     * Write a delta taking a client from what it was last sent to the
+     * current state of the game, if anything differs, and bring what it
+     * was sent up to date. The buffer must be empty, and large enough
+     * for maxMessage.
+     *
+     * @param now the current state of the game
+     * @param sent what the client was last sent
+     * @param out the buffer to write the delta to
+     *
+     * @return true if a delta was written, false if nothing has changed
+     */
+    static boolean putDelta(final BoardSnapshot now, final BoardSnapshot sent,
+			    final ByteBuffer out) {
+	int first = -1;
+	if (now.changes != sent.changes) {
+	    for (int k = 0; k < now.cells.length; k++) {
+		if (now.cells[k] != sent.cells[k]) {
+		    first = k;
+		    break;
+		}
+	    }
+	}
+	int flags = (now.active ? ACTIVE : 0) | (now.warning ? WARNING : 0)
+	    | (now.partrow != sent.partrow ? PARTROW : 0)
+	    | (now.toprow != sent.toprow ? TOPROW : 0)
+	    | (now.score != sent.score ? SCORE : 0)
+	    | (now.combo != sent.combo ? COMBO : 0)
+	    | (now.level != sent.level ? LEVEL : 0)
+	    | (now.runs != sent.runs ? RUNS : 0)
+	    | (first >= 0 ? CELLS : 0);
+	if (flags == ((sent.active ? ACTIVE : 0)
+		      | (sent.warning ? WARNING : 0))) {
+	    sent.changes = now.changes;
+	    return false;
+	}
+	begin(out, DELTA);
+	putVarint(out, flags);
+	if ((flags & PARTROW) != 0) {
+	    putVarint(out, now.partrow);
+	}
+	if ((flags & TOPROW) != 0) {
+	    putVarint(out, now.toprow);
+	}
+	if ((flags & SCORE) != 0) {
+	    putVarint(out, now.score);
+	}
+	if ((flags & COMBO) != 0) {
+	    putVarint(out, now.combo);
+	}
+	if ((flags & LEVEL) != 0) {
+	    putVarint(out, now.level);
+	}
+	if ((flags & RUNS) != 0) {
+	    putVarint(out, now.runs);
+	}
+	if (first >= 0) {
+	    // each cell as the gap since the last one and its value plus
+	    // one, so that 0 can mark the end
+	    int last = -1;
+	    for (int k = first; k < now.cells.length; k++) {
+		if (now.cells[k] != sent.cells[k]) {
+		    putVarint(out, (k - last - 1) << 3 | (now.cells[k] + 1));
+		    last = k;
+		}
+	    }
+	    out.put((byte) 0);
+	}
+	end(out);
+	sent.copy(now);
+	return true;
+    }
+
+    /**
+     * Apply a delta to a board. The cells are only counted as changed
+     * if the delta includes any.
+     *
+     * @param in the buffer holding the delta, after its type
+     * @param end the position of the end of the delta
+     * @param board the board to apply the delta to
+     *
+     * @throws IOException if the delta is malformed
+     */
+    static void getDelta(final ByteBuffer in, final int end,
+			 final BoardSnapshot board) throws IOException {
+	int flags = getVarint(in, end);
+	board.active = (flags & ACTIVE) != 0;
+	board.warning = (flags & WARNING) != 0;
+	if ((flags & PARTROW) != 0) {
+	    board.partrow = getVarint(in, end);
+	}
+	if ((flags & TOPROW) != 0) {
+	    board.toprow = getVarint(in, end);
+	}
+	if ((flags & SCORE) != 0) {
+	    board.score = getVarint(in, end);
+	}
+	if ((flags & COMBO) != 0) {
+	    board.combo = getVarint(in, end);
+	}
+	if ((flags & LEVEL) != 0) {
+	    board.level = getVarint(in, end);
+	}
+	if ((flags & RUNS) != 0) {
+	    board.runs = getVarint(in, end);
+	}
+	if (board.partrow >= GameEngine.ROWSTEPS
+		|| board.toprow >= board.nrows) {
+	    throw new IOException("Bad position in delta");
+	}
+	if ((flags & CELLS) != 0) {
+	    int k = -1;
+	    for (int v = getVarint(in, end); v != 0; v = getVarint(in, end)) {
+		k += (v >>> 3) + 1;
+		int cell = (v & 7) - 1;
+		if (k >= board.cells.length || cell < 0
+			|| cell > GameEngine.NCOLOURS) {
+		    throw new IOException("Bad cell in delta");
+		}
+		board.cells[k] = (byte) cell;
+	    }
+	    board.changes++;
+	}
+    }
+}
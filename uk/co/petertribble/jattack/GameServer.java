@@ -0,0 +1,701 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Host many games at once for clients connecting over TCP, playing the
+ * games here and sending each client only the changes to its board, as
+ * set out in GameProtocol.
+ *
+ * The sessions are shared out between a number of shards, normally one
+ * for each core. Each shard is a GameLoop with a Selector of its own.
+ * Once a frame, it reads whatever its clients have sent and applies it,
+ * runs every game for the frame's ticks, and writes a delta to each
+ * client whose game has changed, without blocking and all on the one
+ * thread, so no session is ever touched by two threads. A new delta is
+ * only made once the last one has gone, so a slow client's changes
+ * build up in its game, to be sent as one delta, rather than queueing.
+ */
+public final class GameServer {
+
+    /**
+     * The default port to listen on.
+     */
+    public static final int DEFAULT_PORT = 7477;
+    /**
+     * The default interval between reports, in seconds.
+     */
+    private static final int DEFAULT_INTERVAL = 10;
+    /**
+     * The size of the buffer for what each client sends.
+     */
+    private static final int IN_SIZE = 16 * GameProtocol.MAX_CLIENT_MESSAGE;
+
+    /**
+     * Accepts connections from clients.
+     */
+    private final ServerSocketChannel server;
+    /**
+     * The shards running the sessions.
+     */
+    private final Shard[] shards;
+    /**
+     * The type of board the games use.
+     */
+    private final BoardType btype;
+    /**
+     * The thread accepting connections, null if stopped.
+     */
+    private volatile Thread acceptor;
+    /**
+     * When the figures were last reported, from System.nanoTime.
+     */
+    private long reported;
+
+    /**
+     * Create a server listening on the given address. It doesn't accept
+     * connections until started.
+     *
+     * @param address the address and port to listen on
+     * @param nshards the number of threads to run the games on
+     * @param nbtype the type of board the games use
+     *
+     * @throws IOException if the server can't listen on the address
+     */
+    public GameServer(final InetSocketAddress address, final int nshards,
+		      final BoardType nbtype) throws IOException {
+	btype = nbtype;
+	shards = new Shard[nshards];
+	server = ServerSocketChannel.open();
+	try {
+	    server.bind(address);
+	    for (int k = 0; k < nshards; k++) {
+		shards[k] = new Shard();
+	    }
+	} catch (IOException ioe) {
+	    server.close();
+	    throw ioe;
+	}
+    }
+
+    /**
+     * Get the port the server is listening on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+	return server.socket().getLocalPort();
+    }
+
+    /**
+     * Start accepting connections and running games.
+     */
+    public void start() {
+	if (acceptor == null) {
+	    reported = System.nanoTime();
+	    for (Shard shard : shards) {
+		shard.loop.start();
+	    }
+	    Thread t = new Thread(this::accept, "jattack-accept");
+	    t.setDaemon(true);
+	    acceptor = t;
+	    t.start();
+	}
+    }
+
+    /**
+     * Stop the server, closing every session.
+     */
+    public void stop() {
+	acceptor = null;
+	try {
+	    server.close();
+	} catch (IOException ioe) {
+	    // nothing more can be done with it
+	}
+	for (Shard shard : shards) {
+	    shard.loop.stop();
+	    shard.close();
+	}
+    }
+
+    /*
+     * Run on the acceptor thread, handing new connections to the shards
+     * in turn.
+     */
+    private void accept() {
+	Thread me = Thread.currentThread();
+	int next = 0;
+	while (acceptor == me) {
+	    try {
+		SocketChannel channel = server.accept();
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		shards[next].arrivals.add(channel);
+		next = (next + 1) % shards.length;
+	    } catch (ClosedChannelException cce) {
+		return;
+	    } catch (IOException ioe) {
+		// such as running out of file descriptors, which may pass
+		LockSupport.parkNanos(GameLoop.FRAME_NANOS);
+	    }
+	}
+    }
+
+    /**
+     * Print a line of figures covering the time since the last report:
+     * the number of sessions, the rate the games are running at, the
+     * rate deltas are sent, what they cost on average for each tick of
+     * each game, how much of a core the shards have kept busy, and so
+     * how many sessions a core could run, and the furthest any shard
+     * has fallen behind.
+     *
+     * @param out where to print the figures
+     */
+    public void report(final PrintStream out) {
+	long now = System.nanoTime();
+	double seconds = (now - reported) / 1e9;
+	reported = now;
+	int sessions = 0;
+	long ticks = 0;
+	long deltas = 0;
+	long bytes = 0;
+	long busy = 0;
+	long late = 0;
+	for (Shard shard : shards) {
+	    sessions += shard.sessions.get();
+	    ticks += shard.ticks.getAndSet(0L);
+	    deltas += shard.deltas.getAndSet(0L);
+	    bytes += shard.bytes.getAndSet(0L);
+	    busy += shard.busy.getAndSet(0L);
+	    late = Math.max(late, shard.loop.takeLateness());
+	}
+	double cores = busy / 1e9 / seconds;
+	out.printf("%d sessions, %.0f ticks/s, %.0f deltas/s, %.1f KB/s,"
+		   + " %.3f bytes/tick, %.2f cores busy, %.0f sessions/core,"
+		   + " lag %.1f ms%n",
+		   sessions, ticks / seconds, deltas / seconds,
+		   bytes / seconds / 1024.0,
+		   ticks == 0 ? 0.0 : (double) bytes / ticks, cores,
+		   cores > 0.0 ? sessions / cores : 0.0, late / 1e6);
+    }
+
+    /**
+     * Report on the server at intervals, for a given time.
+     *
+     * @param interval the interval between reports, in seconds
+     * @param duration how long to report for, in seconds, or 0 to carry
+     * on until the process exits
+     * @param out where to print the reports
+     */
+    public void monitor(final int interval, final int duration,
+			final PrintStream out) {
+	long start = System.nanoTime();
+	long end = start + duration * 1_000_000_000L;
+	long next = start;
+	while (duration == 0 || next - end < 0) {
+	    next += interval * 1_000_000_000L;
+	    if (duration > 0 && next - end > 0) {
+		next = end;
+	    }
+	    for (long now = System.nanoTime(); next - now > 0;
+		 now = System.nanoTime()) {
+		LockSupport.parkNanos(next - now);
+	    }
+	    report(out);
+	}
+    }
+
+    /*
+     * A share of the sessions, run by a loop of its own.
+     */
+    private final class Shard {
+	/**
+	 * The loop running the sessions.
+	 */
+	private final GameLoop loop = new GameLoop(this::frame);
+	/**
+	 * Watches the sessions for anything their clients have sent.
+	 */
+	private final Selector selector;
+	/**
+	 * Connections handed over by the acceptor, to be added as sessions
+	 * on the next frame.
+	 */
+	private final Queue<SocketChannel> arrivals =
+	    new ConcurrentLinkedQueue<>();
+	/**
+	 * The sessions, of which the first nsessions are in use. Only used
+	 * on the loop thread, or once it has stopped.
+	 */
+	private Session[] list = new Session[16];
+	private int nsessions;
+	/**
+	 * Reads from a session whose client has sent something.
+	 */
+	private final Consumer<SelectionKey> ready = this::ready;
+	/**
+	 * The figures since the last report: sessions now, ticks run summed
+	 * over every session, deltas sent, bytes sent, and time spent on
+	 * frames in nanoseconds.
+	 */
+	private final AtomicInteger sessions = new AtomicInteger();
+	private final AtomicLong ticks = new AtomicLong();
+	private final AtomicLong deltas = new AtomicLong();
+	private final AtomicLong bytes = new AtomicLong();
+	private final AtomicLong busy = new AtomicLong();
+	/**
+	 * The deltas sent during the current frame.
+	 */
+	private int framedeltas;
+
+	Shard() throws IOException {
+	    selector = Selector.open();
+	}
+
+	/*
+	 * Run on the loop thread once a frame.
+	 */
+	private void frame(final int nticks) {
+	    long start = System.nanoTime();
+	    admit();
+	    try {
+		selector.selectNow(ready);
+	    } catch (IOException ioe) {
+		// the sessions will carry on without input
+	    }
+	    long played = 0;
+	    long sent = 0;
+	    framedeltas = 0;
+	    for (int k = nsessions - 1; k >= 0; k--) {
+		Session s = list[k];
+		if (!s.closed) {
+		    played += s.advance(nticks);
+		    sent += s.flush();
+		}
+		if (s.closed) {
+		    s.close();
+		    nsessions--;
+		    list[k] = list[nsessions];
+		    list[nsessions] = null;
+		    sessions.decrementAndGet();
+		}
+	    }
+	    ticks.addAndGet(played);
+	    deltas.addAndGet(framedeltas);
+	    bytes.addAndGet(sent);
+	    busy.addAndGet(System.nanoTime() - start);
+	}
+
+	/*
+	 * Add any new connections as sessions.
+	 */
+	private void admit() {
+	    for (SocketChannel channel = arrivals.poll(); channel != null;
+		 channel = arrivals.poll()) {
+		Session s = new Session(channel);
+		try {
+		    channel.configureBlocking(false);
+		    s.key = channel.register(selector, SelectionKey.OP_READ,
+					     s);
+		} catch (IOException ioe) {
+		    s.close();
+		    continue;
+		}
+		if (nsessions == list.length) {
+		    list = Arrays.copyOf(list, 2 * nsessions);
+		}
+		list[nsessions++] = s;
+		sessions.incrementAndGet();
+	    }
+	}
+
+	/*
+	 * Read from a session whose client has sent something.
+	 */
+	private void ready(final SelectionKey key) {
+	    Session s = (Session) key.attachment();
+	    try {
+		s.read();
+	    } catch (IOException ioe) {
+		s.closed = true;
+	    }
+	}
+
+	/*
+	 * Close every session, once the loop has stopped.
+	 */
+	private void close() {
+	    for (int k = 0; k < nsessions; k++) {
+		list[k].close();
+		list[k] = null;
+	    }
+	    nsessions = 0;
+	    sessions.set(0);
+	    for (SocketChannel channel = arrivals.poll(); channel != null;
+		 channel = arrivals.poll()) {
+		new Session(channel).close();
+	    }
+	    try {
+		selector.close();
+	    } catch (IOException ioe) {
+		// nothing more can be done with it
+	    }
+	}
+
+	/*
+	 * A game played for a client. The game isn't created until the
+	 * client says how big it should be.
+	 */
+	private final class Session {
+	    /**
+	     * The connection to the client.
+	     */
+	    private final SocketChannel channel;
+	    /**
+	     * The registration with the shard's selector.
+	     */
+	    private SelectionKey key;
+	    /**
+	     * What the client has sent and hasn't yet been applied.
+	     */
+	    private final ByteBuffer in = ByteBuffer.allocate(IN_SIZE);
+	    /**
+	     * The message being sent, empty once it has all gone.
+	     */
+	    private ByteBuffer out;
+	    /**
+	     * The game, null until the client joins.
+	     */
+	    private GameEngine engine;
+	    /**
+	     * The game as it is now, and as the client was last sent it.
+	     */
+	    private BoardSnapshot now;
+	    private BoardSnapshot sent;
+	    /**
+	     * Set once the session is finished with.
+	     */
+	    private boolean closed;
+
+	    Session(final SocketChannel nchannel) {
+		channel = nchannel;
+	    }
+
+	    /*
+	     * Read and apply whatever the client has sent.
+	     */
+	    private void read() throws IOException {
+		if (channel.read(in) < 0) {
+		    closed = true;
+		    return;
+		}
+		in.flip();
+		for (int end = GameProtocol.next(in); end >= 0;
+		     end = GameProtocol.next(in)) {
+		    apply(in.get(), end);
+		    if (in.position() != end) {
+			throw new IOException("Bad message");
+		    }
+		}
+		in.compact();
+	    }
+
+	    /*
+	     * Apply a message from the client.
+	     */
+	    private void apply(final int type, final int end)
+		    throws IOException {
+		if (type == GameProtocol.JOIN) {
+		    join(GameProtocol.getVarint(in, end),
+			 GameProtocol.getVarint(in, end));
+		    return;
+		} else if (engine == null) {
+		    throw new IOException("Not joined");
+		}
+		if (type == GameProtocol.NEW) {
+		    engine.newGame(GameProtocol.getLong(in, end));
+		} else if (type == GameProtocol.SWAP_RIGHT
+			   || type == GameProtocol.SWAP_LEFT) {
+		    int cell = GameProtocol.getVarint(in, end);
+		    int ncolumns = engine.getColumns();
+		    int i = cell % ncolumns;
+		    int j = cell / ncolumns;
+		    // the engine turns down any swap it can't make
+		    if (type == GameProtocol.SWAP_RIGHT) {
+			engine.swap(i, i + 1, j);
+		    } else {
+			engine.swap(i + 1, i, j);
+		    }
+		} else if (type == GameProtocol.STEP) {
+		    int n = Math.min(GameProtocol.getVarint(in, end),
+				     GameEngine.ROWSTEPS);
+		    for (int k = 0; k < n && engine.isActive(); k++) {
+			engine.step();
+		    }
+		} else {
+		    throw new IOException("Unknown message");
+		}
+	    }
+
+	    /*
+	     * Set up the game, if it's a size that can be played, and
+	     * tell the client it's ready.
+	     */
+	    private void join(final int ncolumns, final int nrows)
+		    throws IOException {
+		if (engine != null) {
+		    throw new IOException("Already joined");
+		}
+		if (ncolumns < GameProtocol.MIN_COLUMNS
+			|| ncolumns > GameProtocol.MAX_COLUMNS
+			|| nrows < GameProtocol.MIN_ROWS
+			|| nrows > GameProtocol.MAX_ROWS) {
+		    throw new IOException("Bad board size");
+		}
+		engine = new GameEngine(ncolumns, nrows, btype);
+		now = new BoardSnapshot(ncolumns, nrows);
+		sent = new BoardSnapshot(ncolumns, nrows);
+		out = ByteBuffer.allocate(
+			GameProtocol.maxMessage(ncolumns, nrows));
+		GameProtocol.begin(out, GameProtocol.START);
+		GameProtocol.putVarint(out, ncolumns);
+		GameProtocol.putVarint(out, nrows);
+		GameProtocol.end(out);
+	    }
+
+	    /*
+	     * Run the game for the frame. Returns the number of ticks run.
+	     */
+	    private int advance(final int nticks) {
+		if (engine == null || !engine.isActive()) {
+		    return 0;
+		}
+		int k = 0;
+		while (k < nticks && engine.isActive()) {
+		    engine.tick();
+		    k++;
+		}
+		return k;
+	    }
+
+	    /*
+	     * Send the client what's left of the last message, or if that
+	     * has all gone, a delta if the game has changed. Returns the
+	     * number of bytes sent.
+	     */
+	    private int flush() {
+		if (out == null) {
+		    return 0;
+		}
+		if (!out.hasRemaining()) {
+		    now.capture(engine);
+		    if (!GameProtocol.putDelta(now, sent, out)) {
+			return 0;
+		    }
+		    framedeltas++;
+		}
+		try {
+		    return channel.write(out);
+		} catch (IOException ioe) {
+		    closed = true;
+		    return 0;
+		}
+	    }
+
+	    /*
+	     * Close the connection.
+	     */
+	    private void close() {
+		closed = true;
+		if (key != null) {
+		    key.cancel();
+		}
+		try {
+		    channel.close();
+		} catch (IOException ioe) {
+		    // it's gone anyway
+		}
+	    }
+	}
+    }
+
+    private static void bailOut(final String s) {
+	System.err.println(s); //NOPMD
+	System.exit(1);
+    }
+
+    private static int intArg(final String[] args, final int i) {
+	if (i >= args.length) {
+	    bailOut("Expecting an argument to " + args[i - 1] + "!");
+	}
+	try {
+	    return Integer.parseInt(args[i]);
+	} catch (NumberFormatException ex) {
+	    bailOut("Invalid argument to " + args[i - 1] + "!");
+	}
+	return 0;
+    }
+
+    /**
+     * Run a game server, reporting on it at intervals. The port is given
+     * with -p, the number of threads to run games on with -t, which
+     * defaults to the number of cores, the board type with -b array or -b
+     * bits, and the interval between reports in seconds with -i.
+     *
+     * The server only listens on loopback, so for clients on other
+     * machines the address to listen on must be given with -a, such as
+     * 0.0.0.0 for every interface.
+     *
+     * To measure the server, -l sessions starts that many sessions
+     * played by local clients over loopback, each making -m moves a
+     * second on a board of -c columns and -r rows, and the server stops
+     * after -d seconds.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(final String[] args) {
+	int port = -1;
+	String bindhost = null;
+	int nthreads = Runtime.getRuntime().availableProcessors();
+	BoardType type = BoardType.ARRAY;
+	int interval = DEFAULT_INTERVAL;
+	int load = 0;
+	int ncolumns = GameProtocol.MIN_COLUMNS;
+	int nrows = GameProtocol.MIN_ROWS;
+	int moves = ServerLoad.DEFAULT_MOVES;
+	int duration = 0;
+	int i = 0;
+	while (i < args.length) {
+	    if ("-p".equals(args[i])) {
+		port = intArg(args, ++i);
+	    } else if ("-a".equals(args[i])) {
+		++i;
+		if (i >= args.length) {
+		    bailOut("Expecting an argument to -a!");
+		}
+		bindhost = args[i];
+	    } else if ("-t".equals(args[i])) {
+		nthreads = intArg(args, ++i);
+	    } else if ("-b".equals(args[i])) {
+		++i;
+		if (i >= args.length) {
+		    bailOut("Expecting an argument to -b!");
+		} else if ("bits".equals(args[i])) {
+		    type = BoardType.BITS;
+		} else if ("array".equals(args[i])) {
+		    type = BoardType.ARRAY;
+		} else {
+		    bailOut("Invalid board type!");
+		}
+	    } else if ("-i".equals(args[i])) {
+		interval = intArg(args, ++i);
+	    } else if ("-l".equals(args[i])) {
+		load = intArg(args, ++i);
+	    } else if ("-c".equals(args[i])) {
+		ncolumns = intArg(args, ++i);
+	    } else if ("-r".equals(args[i])) {
+		nrows = intArg(args, ++i);
+	    } else if ("-m".equals(args[i])) {
+		moves = intArg(args, ++i);
+	    } else if ("-d".equals(args[i])) {
+		duration = intArg(args, ++i);
+	    } else {
+		bailOut("Usage: GameServer [-p port] [-a address] [-t threads]"
+			+ " [-b array|bits] [-i interval] [-l sessions"
+			+ " [-c columns] [-r rows] [-m moves] [-d seconds]]");
+	    }
+	    ++i;
+	}
+	if (nthreads < 1 || interval < 1 || load < 0 || moves < 0
+		|| duration < 0 || port > 65_535) {
+	    bailOut("Arguments out of range!");
+	}
+	if (ncolumns < GameProtocol.MIN_COLUMNS
+		|| ncolumns > GameProtocol.MAX_COLUMNS
+		|| nrows < GameProtocol.MIN_ROWS
+		|| nrows > GameProtocol.MAX_ROWS) {
+	    bailOut("Invalid board size!");
+	}
+	if (load == 0 && duration > 0) {
+	    bailOut("Can only stop after -d seconds with -l!");
+	}
+	if (load > 0 && duration == 0) {
+	    duration = ServerLoad.DEFAULT_SECONDS;
+	}
+	if (load > 0 && bindhost != null) {
+	    bailOut("A load test only listens on loopback!");
+	}
+	if (load == 0 && port < 0) {
+	    port = DEFAULT_PORT;
+	}
+	GameServer server = null;
+	try {
+	    InetAddress bindaddr = bindhost == null
+		? InetAddress.getLoopbackAddress()
+		: InetAddress.getByName(bindhost);
+	    server = new GameServer(
+		new InetSocketAddress(bindaddr, Math.max(port, 0)), nthreads,
+		type);
+	} catch (IOException ioe) {
+	    bailOut("Unable to listen: " + ioe.getMessage());
+	}
+	server.start();
+	System.out.printf("Listening on port %d with %d threads%n",
+			  server.getPort(), nthreads);
+	if (load == 0) {
+	    server.monitor(interval, 0, System.out);
+	    return;
+	}
+	ServerLoad clients = new ServerLoad(
+		new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				      server.getPort()),
+		load, ncolumns, nrows, moves);
+	try {
+	    clients.start();
+	} catch (IOException ioe) {
+	    server.stop();
+	    bailOut("Unable to connect: " + ioe.getMessage());
+	}
+	server.monitor(interval, duration, System.out);
+	clients.stop();
+	server.stop();
+	clients.report(System.out);
+    }
+}
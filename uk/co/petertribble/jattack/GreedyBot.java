@@ -0,0 +1,124 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * A bot that plays like a hurried beginner. Every so often it makes the
+ * swap the engine would give as a hint, which completes a run either in
+ * place or by moving a cell sideways to drop onto a neighbouring column,
+ * nearest the bottom of the board. If there isn't one, it moves
+ * the top cell of the tallest column sideways to level the stack out,
+ * and failing that stirs things up with a random swap, which is often
+ * enough to set up a run for next time.
+ */
+public final class GreedyBot implements Bot {
+
+    /**
+     * The default number of ticks between moves.
+     */
+    public static final int DEFAULT_INTERVAL = 250;
+
+    /**
+     * The number of ticks between moves.
+     */
+    private final int interval;
+    /**
+     * The source of random swaps.
+     */
+    private final SplitMix random = new SplitMix(0L);
+
+    /**
+     * Create a bot that moves at the default rate.
+     */
+    public GreedyBot() {
+	this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Create a bot that moves at the given rate.
+     *
+     * @param ninterval the number of ticks between moves
+     */
+    public GreedyBot(final int ninterval) {
+	interval = ninterval;
+    }
+
+    @Override
+    public void newGame(final GameEngine engine) {
+	random.setState(engine.getSeed());
+    }
+
+    @Override
+    public void play(final GameEngine engine) {
+	if (engine.getTicks() % interval == 0 && !makeMatch(engine)
+		&& !level(engine)) {
+	    int nrows = engine.getRows();
+	    int i = random.nextInt(engine.getColumns() - 1);
+	    int n = random.nextInt(nrows - 1) + 1;
+	    engine.swap(i, i + 1, (engine.getToprow() + n) % nrows);
+	}
+    }
+
+    /*
+     * Make the swap the engine suggests as a hint, if there is one.
+     */
+    private static boolean makeMatch(final GameEngine engine) {
+	int hint = engine.getHint();
+	if (hint < 0) {
+	    return false;
+	}
+	int ncolumns = engine.getColumns();
+	int i = hint % ncolumns;
+	engine.swap(i, i + 1, hint / ncolumns);
+	return true;
+    }
+
+    /*
+     * Move the top cell of the tallest column onto the lower of its
+     * neighbours, if that's at least two cells lower. Returns true if a
+     * move was made.
+     */
+    private static boolean level(final GameEngine engine) {
+	int ncolumns = engine.getColumns();
+	int tallest = 0;
+	for (int i = 1; i < ncolumns; i++) {
+	    if (engine.getHeight(i) > engine.getHeight(tallest)) {
+		tallest = i;
+	    }
+	}
+	int h = engine.getHeight(tallest);
+	int target = -1;
+	int lowest = h - 1;
+	if (tallest > 0 && engine.getHeight(tallest - 1) < lowest) {
+	    target = tallest - 1;
+	    lowest = engine.getHeight(target);
+	}
+	if (tallest < ncolumns - 1 && engine.getHeight(tallest + 1) < lowest) {
+	    target = tallest + 1;
+	}
+	if (target >= 0) {
+	    int nrows = engine.getRows();
+	    return engine.swap(tallest, target,
+			       (engine.getToprow() + nrows - h) % nrows);
+	}
+	return false;
+    }
+}
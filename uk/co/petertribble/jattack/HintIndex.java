@@ -0,0 +1,289 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * The swaps that would complete a run, kept up to date as the board
+ * changes. A swap counts if a cell it moves, either staying in its row
+ * or dropping down into a gap, lines up with two more of the same
+ * colour. Runs made by other cells falling into the space left behind
+ * aren't looked for.
+ *
+ * Whether a swap counts depends only on the cells near it, and on the
+ * columns it involves, so rather than looking at every swap each time,
+ * only those near the cells the board reports as changed are looked at
+ * again, along with those near the partly visible row when the board
+ * rises. Swaps are held by row, as stored, so that rising doesn't move
+ * them.
+ */
+final class HintIndex {
+
+    /**
+     * The board the hints are for.
+     */
+    private final Board cells;
+    /**
+     * The number of columns on the board.
+     */
+    private final int ncolumns;
+    /**
+     * The number of rows on the board.
+     */
+    private final int nrows;
+    /**
+     * Whether each swap counts, indexed by row * ncolumns + the column
+     * of the left cell.
+     */
+    private final boolean[] hints;
+    /**
+     * The number of swaps that count.
+     */
+    private int count;
+    /**
+     * Marks the column pairs, by left column, whose drops need looking
+     * at again.
+     */
+    private final boolean[] droppairs;
+    /**
+     * The row at the top when the hints were last brought up to date, -1
+     * if they never have been.
+     */
+    private int lasttop = -1;
+    /**
+     * The row at the top now, while bringing the hints up to date.
+     */
+    private int toprow;
+
+    /**
+     * Create an index for a board.
+     *
+     * @param ncells the board to keep the hints for
+     */
+    HintIndex(final Board ncells) {
+	cells = ncells;
+	ncolumns = cells.ncolumns;
+	nrows = cells.nrows;
+	hints = new boolean[ncolumns * nrows];
+	droppairs = new boolean[ncolumns];
+    }
+
+    /**
+     * Bring the hints up to date with the board.
+     *
+     * @param ntoprow the row currently at the top of the game
+     */
+    void update(final int ntoprow) {
+	toprow = ntoprow;
+	if (lasttop < 0 || cells.allChanged()) {
+	    for (int j = 0; j < nrows; j++) {
+		for (int i = 0; i < ncolumns - 1; i++) {
+		    check(i, j);
+		}
+	    }
+	} else {
+	    if (toprow != lasttop) {
+		// these rows have come into view or gone out of it
+		changed(lasttop, 0, ncolumns - 1);
+		changed(toprow, 0, ncolumns - 1);
+	    }
+	    for (int k = 0; k < cells.changedRows(); k++) {
+		int j = cells.changedRow(k);
+		changed(j, cells.changedLeft(j), cells.changedRight(j));
+	    }
+	    for (int i = 0; i < ncolumns - 1; i++) {
+		if (droppairs[i]) {
+		    droppairs[i] = false;
+		    // only swaps with a gap on one side drop, and as cells
+		    // fall those all lie above the lower of the two stacks
+		    for (int n = 1; n < nrows; n++) {
+			int j = row(n);
+			boolean gapl = cells.get(i, j) == 0;
+			boolean gapr = cells.get(i + 1, j) == 0;
+			if (gapl != gapr) {
+			    check(i, j);
+			} else if (!gapl) {
+			    break;
+			}
+		    }
+		}
+	    }
+	}
+	cells.clearChanges();
+	lasttop = toprow;
+    }
+
+    /*
+     * Look again at the swaps that the cells from left to right of row j
+     * might affect: the swaps in line with them within two rows, and any
+     * swaps dropping a cell into columns within two of them.
+     */
+    private void changed(final int j, final int left, final int right) {
+	int lo = Math.max(0, left - 3);
+	int hi = Math.min(ncolumns - 2, right + 2);
+	for (int d = -2; d <= 2; d++) {
+	    int jj = (j + d + nrows) % nrows;
+	    for (int i = lo; i <= hi; i++) {
+		check(i, jj);
+	    }
+	}
+	for (int i = lo; i <= hi; i++) {
+	    droppairs[i] = true;
+	}
+    }
+
+    /*
+     * Work out whether swapping the cells in columns i and i + 1 of row j
+     * counts.
+     */
+    private void check(final int i, final int j) {
+	boolean hint = matches(i, j);
+	int k = j * ncolumns + i;
+	if (hint != hints[k]) {
+	    hints[k] = hint;
+	    count += hint ? 1 : -1;
+	}
+    }
+
+    /*
+     * Would swapping the cells in columns i and i + 1 of row j complete
+     * a run?
+     */
+    private boolean matches(final int i, final int j) {
+	int n = position(j);
+	if (n == 0) {
+	    return false;
+	}
+	int left = cells.get(i, j);
+	int right = cells.get(i + 1, j);
+	if (left == right) {
+	    return false;
+	} else if (left == 0) {
+	    return completes(i, landing(i, n), right, i + 1, n);
+	} else if (right == 0) {
+	    return completes(i + 1, landing(i + 1, n), left, i, n);
+	}
+	return completes(i, n, right, i + 1, n)
+	    || completes(i + 1, n, left, i, n);
+    }
+
+    /*
+     * Find where a cell moved into the gap at position n of column i
+     * comes to rest.
+     */
+    private int landing(final int i, final int n) {
+	int m = n;
+	while (m < nrows - 1 && cells.get(i, row(m + 1)) == 0) {
+	    m++;
+	}
+	return m;
+    }
+
+    /*
+     * Would a cell of value val, moved from column from at position
+     * nfrom to column i at position n, complete a run? Column from is
+     * only left out of the count along the row the cell came from.
+     */
+    private boolean completes(final int i, final int n, final int val,
+			      final int from, final int nfrom) {
+	int skip = n == nfrom ? from : -1;
+	int j = row(n);
+	int count = 0;
+	for (int k = i - 1; k >= 0 && k != skip
+		 && cells.get(k, j) == val && count < 2; k--) {
+	    count++;
+	}
+	for (int k = i + 1; k < ncolumns && k != skip
+		 && cells.get(k, j) == val && count < 2; k++) {
+	    count++;
+	}
+	if (count == 2) {
+	    return true;
+	}
+	count = 0;
+	for (int m = n - 1; m > 0 && cells.get(i, row(m)) == val
+		 && count < 2; m--) {
+	    count++;
+	}
+	for (int m = n + 1; m < nrows && cells.get(i, row(m)) == val
+		 && count < 2; m++) {
+	    count++;
+	}
+	return count == 2;
+    }
+
+    private int position(final int j) {
+	int n = j - toprow;
+	return n < 0 ? n + nrows : n;
+    }
+
+    private int row(final int n) {
+	int j = toprow + n;
+	return j >= nrows ? j - nrows : j;
+    }
+
+    /**
+     * Get the number of swaps that complete a run.
+     *
+     * @return the number of hints
+     */
+    int count() {
+	return count;
+    }
+
+    /**
+     * Find the swap nearest the bottom of the board that completes a run,
+     * taking the leftmost if there's more than one in a row.
+     *
+     * @return the swap, as row * columns + the column of the left cell,
+     * or -1 if there are none
+     */
+    int first() {
+	if (count > 0) {
+	    for (int n = nrows - 1; n > 0; n--) {
+		int base = row(n) * ncolumns;
+		for (int i = 0; i < ncolumns - 1; i++) {
+		    if (hints[base + i]) {
+			return base + i;
+		    }
+		}
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Copy all the swaps that complete a run.
+     *
+     * @param dst where to put the swaps, each as row * columns + the
+     * column of the left cell
+     *
+     * @return the number of swaps
+     */
+    int copyTo(final int[] dst) {
+	int nhints = 0;
+	for (int k = 0; k < hints.length && nhints < count; k++) {
+	    if (hints[k]) {
+		dst[nhints++] = k;
+	    }
+	}
+	return nhints;
+    }
+}
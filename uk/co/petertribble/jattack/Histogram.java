@@ -0,0 +1,167 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size histogram of non-negative values, so that the distribution
+ * of any number of values can be kept in the same space. Values below 32
+ * are counted exactly; larger ones in buckets, 16 to each power of two,
+ * so that percentiles are within about 6% of the true value.
+ */
+final class Histogram {
+
+    /**
+     * The number of buckets for each power of two.
+     */
+    private static final int SUBBUCKETS = 16;
+    /**
+     * Enough buckets for every value of long.
+     */
+    private static final int NBUCKETS = 2 * SUBBUCKETS
+	+ (63 - 5) * SUBBUCKETS;
+
+    /**
+     * The counts for each bucket.
+     */
+    private final long[] counts = new long[NBUCKETS];
+    /**
+     * The number of values.
+     */
+    private long total;
+    /**
+     * The sum of the values.
+     */
+    private double sum;
+    /**
+     * The largest value.
+     */
+    private long max;
+
+    /*
+     * Find the bucket for a value.
+     */
+    private static int bucket(final long v) {
+	if (v < 2 * SUBBUCKETS) {
+	    return (int) v;
+	}
+	int e = 63 - Long.numberOfLeadingZeros(v);
+	return 2 * SUBBUCKETS + (e - 5) * SUBBUCKETS
+	    + (int) (v >>> (e - 4)) - SUBBUCKETS;
+    }
+
+    /*
+     * Find the smallest value in a bucket.
+     */
+    private static long lowest(final int b) {
+	if (b < 2 * SUBBUCKETS) {
+	    return b;
+	}
+	int e = (b - 2 * SUBBUCKETS) / SUBBUCKETS + 5;
+	long sub = (b - 2 * SUBBUCKETS) % SUBBUCKETS + SUBBUCKETS;
+	return sub << (e - 4);
+    }
+
+    /**
+     * Count a value.
+     *
+     * @param v the value, which must not be negative
+     */
+    void add(final long v) {
+	counts[bucket(v)]++;
+	total++;
+	sum += v;
+	if (v > max) {
+	    max = v;
+	}
+    }
+
+    /**
+     * Add in all the values counted by another histogram.
+     *
+     * @param h the histogram to add
+     */
+    void add(final Histogram h) {
+	for (int b = 0; b < NBUCKETS; b++) {
+	    counts[b] += h.counts[b];
+	}
+	total += h.total;
+	sum += h.sum;
+	max = Math.max(max, h.max);
+    }
+
+    /**
+     * Forget all the values, so the histogram can be used again.
+     */
+    void clear() {
+	Arrays.fill(counts, 0L);
+	total = 0;
+	sum = 0.0;
+	max = 0;
+    }
+
+    /**
+     * Get the number of values counted.
+     *
+     * @return the number of values
+     */
+    long count() {
+	return total;
+    }
+
+    /**
+     * Get the mean of the values counted.
+     *
+     * @return the mean, 0 if there are no values
+     */
+    double mean() {
+	return total == 0 ? 0.0 : sum / total;
+    }
+
+    /**
+     * Get the largest value counted.
+     *
+     * @return the largest value
+     */
+    long max() {
+	return max;
+    }
+
+    /**
+     * Estimate a percentile of the values counted.
+     *
+     * @param p the percentile, from 0 to 100
+     *
+     * @return the smallest value in the bucket holding the percentile
+     */
+    long percentile(final double p) {
+	long rank = (long) Math.ceil(p / 100.0 * total);
+	long seen = 0;
+	for (int b = 0; b < NBUCKETS; b++) {
+	    seen += counts[b];
+	    if (seen >= rank && seen > 0) {
+		return lowest(b);
+	    }
+	}
+	return max;
+    }
+}
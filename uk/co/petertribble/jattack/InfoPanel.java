@@ -29,24 +29,83 @@ import javax.swing.JPanel;
 
 /**
  * The information panel, displayed to the right of the game, showing
- * the current speed and score.
+ * the current speed and score, and optionally how smoothly the game is
+ * running. Setting a value that is already shown does nothing, and the
+ * numbers that change as the game is played can be changed without
+ * allocating anything or laying out the panel again, so the panel can
+ * be brought up to date every frame.
  */
 public final class InfoPanel extends JPanel {
 
     private static final long serialVersionUID = 1L;
 
     /**
-     * The JLabel to display the current score.
+     * The label to display the current score.
      */
-    private final JLabel scoreLabel;
+    private final NumberLabel scoreLabel;
     /**
-     * The JLabel to display the current speed.
+     * The label to display the current speed.
      */
-    private final JLabel speedLabel;
+    private final NumberLabel speedLabel;
+    /**
+     * The label to display the length of the latest chain of matches.
+     */
+    private final NumberLabel comboLabel;
+    /**
+     * The label to display the number of runs cleared.
+     */
+    private final NumberLabel runsLabel;
+    /**
+     * The JLabel naming the number of dropped frames, only shown when
+     * rendering actively.
+     */
+    private final JLabel tdroppedLabel;
+    /**
+     * The JLabel to display the number of dropped frames, shown along
+     * with its name.
+     */
+    private final JLabel droppedLabel;
     /**
      * The JLabel to display an arbitrary message.
      */
     private final JLabel msgLabel;
+    /**
+     * The panel showing how smoothly the game is running, hidden unless
+     * asked for.
+     */
+    private final JPanel perfPanel;
+    /**
+     * The label to display the ticks per second.
+     */
+    private final NumberLabel tpsLabel;
+    /**
+     * The label to display the median frame time.
+     */
+    private final NumberLabel frame50Label;
+    /**
+     * The label to display the 99th percentile frame time.
+     */
+    private final NumberLabel frame99Label;
+    /**
+     * The label to display the most the game loop fell behind.
+     */
+    private final NumberLabel lagLabel;
+    /**
+     * The label to display the number of garbage collections.
+     */
+    private final NumberLabel gcLabel;
+    /**
+     * The label to display the time spent in garbage collection.
+     */
+    private final NumberLabel gctimeLabel;
+    /**
+     * The number of dropped frames currently shown.
+     */
+    private long dropped = -1;
+    /**
+     * The message currently shown.
+     */
+    private String message = "";
 
     /**
      * Create a new InfoPanel.
@@ -56,39 +115,110 @@ public final class InfoPanel extends JPanel {
 	JLabel tscoreLabel = new JLabel("Score:");
 	tscoreLabel.setAlignmentX(CENTER_ALIGNMENT);
 	add(tscoreLabel);
-	scoreLabel = new JLabel("0");
-	scoreLabel.setAlignmentX(CENTER_ALIGNMENT);
+	scoreLabel = new NumberLabel();
 	add(scoreLabel);
 	JLabel tspeedLabel = new JLabel("Speed:");
 	tspeedLabel.setAlignmentX(CENTER_ALIGNMENT);
 	add(tspeedLabel);
-	speedLabel = new JLabel("0");
-	speedLabel.setAlignmentX(CENTER_ALIGNMENT);
+	speedLabel = new NumberLabel();
 	add(speedLabel);
+	JLabel tcomboLabel = new JLabel("Combo:");
+	tcomboLabel.setAlignmentX(CENTER_ALIGNMENT);
+	add(tcomboLabel);
+	comboLabel = new NumberLabel();
+	add(comboLabel);
+	JLabel trunsLabel = new JLabel("Runs:");
+	trunsLabel.setAlignmentX(CENTER_ALIGNMENT);
+	add(trunsLabel);
+	runsLabel = new NumberLabel();
+	add(runsLabel);
+	tdroppedLabel = new JLabel("Dropped:");
+	tdroppedLabel.setAlignmentX(CENTER_ALIGNMENT);
+	tdroppedLabel.setVisible(false);
+	add(tdroppedLabel);
+	droppedLabel = new JLabel("0");
+	droppedLabel.setAlignmentX(CENTER_ALIGNMENT);
+	droppedLabel.setVisible(false);
+	add(droppedLabel);
 	setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
 	msgLabel = new JLabel();
 	msgLabel.setAlignmentX(CENTER_ALIGNMENT);
 	add(msgLabel);
+	perfPanel = new JPanel();
+	perfPanel.setLayout(new BoxLayout(perfPanel, BoxLayout.PAGE_AXIS));
+	perfPanel.setAlignmentX(CENTER_ALIGNMENT);
+	tpsLabel = addPerf("Ticks/s:");
+	frame50Label = addPerf("Frame p50 (us):");
+	frame99Label = addPerf("Frame p99 (us):");
+	lagLabel = addPerf("Lag (us):");
+	gcLabel = addPerf("GCs:");
+	gctimeLabel = addPerf("GC time (ms):");
+	perfPanel.setVisible(false);
+	add(perfPanel);
 	add(Box.createRigidArea(new Dimension(80, 1)));
 	setSize(400, 400);
     }
 
+    /*
+     * Add a titled number to the performance panel.
+     */
+    private NumberLabel addPerf(final String title) {
+	JLabel tlabel = new JLabel(title);
+	tlabel.setAlignmentX(CENTER_ALIGNMENT);
+	perfPanel.add(tlabel);
+	NumberLabel label = new NumberLabel();
+	perfPanel.add(label);
+	return label;
+    }
+
     /**
      * Update the speed label.
      *
-     * @param speed the current speed
+     * @param nspeed the current speed
      */
-    public void setSpeed(final int speed) {
-	speedLabel.setText(Integer.toString(speed));
+    public void setSpeed(final int nspeed) {
+	speedLabel.setValue(nspeed);
     }
 
     /**
      * Update the score label.
      *
-     * @param score the current score
+     * @param nscore the current score
+     */
+    public void setScore(final int nscore) {
+	scoreLabel.setValue(nscore);
+    }
+
+    /**
+     * Update the combo label.
+     *
+     * @param ncombo the length of the latest chain of matches
      */
-    public void setScore(final int score) {
-	scoreLabel.setText(Integer.toString(score));
+    public void setCombo(final int ncombo) {
+	comboLabel.setValue(ncombo);
+    }
+
+    /**
+     * Update the runs label.
+     *
+     * @param nruns the number of runs cleared
+     */
+    public void setRuns(final int nruns) {
+	runsLabel.setValue(nruns);
+    }
+
+    /**
+     * Update the count of dropped frames, showing it if it isn't already.
+     *
+     * @param ndropped the number of frames dropped
+     */
+    public void setDropped(final long ndropped) {
+	if (ndropped != dropped) {
+	    dropped = ndropped;
+	    droppedLabel.setText(Long.toString(dropped));
+	    tdroppedLabel.setVisible(true);
+	    droppedLabel.setVisible(true);
+	}
     }
 
     /**
@@ -97,6 +227,58 @@ public final class InfoPanel extends JPanel {
      * @param s the message text to display
      */
     public void setMessage(final String s) {
-	msgLabel.setText(s);
+	if (!s.equals(message)) {
+	    message = s;
+	    msgLabel.setText(s);
+	}
+    }
+
+    /**
+     * Update everything shown about the game's progress at once.
+     *
+     * @param nscore the current score
+     * @param nspeed the current speed
+     * @param ncombo the length of the latest chain of matches
+     * @param nruns the number of runs cleared
+     * @param s the message text to display
+     */
+    public void setProgress(final int nscore, final int nspeed,
+			    final int ncombo, final int nruns, final String s) {
+	setScore(nscore);
+	setSpeed(nspeed);
+	setCombo(ncombo);
+	setRuns(nruns);
+	setMessage(s);
+    }
+
+    /**
+     * Choose whether to show how smoothly the game is running.
+     *
+     * @param shown true to show the performance figures
+     */
+    public void setPerformanceShown(final boolean shown) {
+	perfPanel.setVisible(shown);
+    }
+
+    /**
+     * Update the performance figures.
+     *
+     * @param ntps the number of ticks the game clock ran per second
+     * @param nframe50 the median time between frames, in microseconds
+     * @param nframe99 the 99th percentile time between frames, in
+     * microseconds
+     * @param nlag the most the game loop fell behind, in microseconds
+     * @param ngcs the number of garbage collections
+     * @param ngctime the time spent collecting garbage, in milliseconds
+     */
+    public void setPerformance(final int ntps, final int nframe50,
+			       final int nframe99, final int nlag,
+			       final int ngcs, final int ngctime) {
+	tpsLabel.setValue(ntps);
+	frame50Label.setValue(nframe50);
+	frame99Label.setValue(nframe99);
+	lagLabel.setValue(nlag);
+	gcLabel.setValue(ngcs);
+	gctimeLabel.setValue(ngctime);
     }
 }
@@ -0,0 +1,68 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for the board being checked for runs, when
+ * any were found and cleared.
+ */
+@Name("uk.co.petertribble.jattack.Match")
+@Label("Match")
+@Category("Jattack")
+@Description("Runs being cleared from the board, and any cascade")
+@StackTrace(false)
+final class MatchEvent extends jdk.jfr.Event {
+
+    /**
+     * The type of this event, for checking whether it's being recorded
+     * without creating an event.
+     */
+    static final EventType TYPE = EventType.getEventType(MatchEvent.class);
+
+    /**
+     * The number of rounds of clearing, 1 unless falling cells made new
+     * runs.
+     */
+    @Label("Cascade Depth")
+    int depth;
+    /**
+     * The number of runs cleared.
+     */
+    @Label("Runs")
+    int runs;
+    /**
+     * The number of cells cleared.
+     */
+    @Label("Cells Cleared")
+    int cells;
+    /**
+     * The points scored.
+     */
+    @Label("Points")
+    int points;
+}
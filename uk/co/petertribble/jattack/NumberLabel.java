@@ -0,0 +1,130 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.util.Map;
+import javax.swing.JComponent;
+import javax.swing.UIManager;
+
+/**
+ * A label showing a number. Unlike a JLabel, which needs a new String
+ * every time its text changes and then lays out its container again,
+ * the digits are kept in a char array and drawn directly, so changing
+ * the number only needs a repaint and allocates nothing. The label is
+ * wide enough for any int.
+ */
+final class NumberLabel extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The most characters needed, for the sign and digits of any int.
+     */
+    private static final int MAXCHARS = 11;
+
+    /**
+     * The characters of the number, right aligned.
+     */
+    private final char[] chars = new char[MAXCHARS];
+    /**
+     * The index of the first character of the number.
+     */
+    private int start;
+    /**
+     * The number shown.
+     */
+    private int value;
+    /**
+     * The desktop's text rendering hints, null if there aren't any.
+     */
+    private final transient Map<?, ?> hints;
+
+    /**
+     * Create a label showing 0, in the look and feel's label font.
+     */
+    NumberLabel() {
+	setFont(UIManager.getFont("Label.font"));
+	setForeground(UIManager.getColor("Label.foreground"));
+	setAlignmentX(CENTER_ALIGNMENT);
+	hints = (Map<?, ?>) Toolkit.getDefaultToolkit()
+	    .getDesktopProperty("awt.font.desktophints");
+	format();
+    }
+
+    /**
+     * Show a number, doing nothing if it's already shown.
+     *
+     * @param nvalue the number to show
+     */
+    void setValue(final int nvalue) {
+	if (nvalue != value) {
+	    value = nvalue;
+	    format();
+	    repaint();
+	}
+    }
+
+    /*
+     * Write out the digits of the value, working back from the end.
+     */
+    private void format() {
+	long v = Math.abs((long) value);
+	int k = MAXCHARS;
+	do {
+	    chars[--k] = (char) ('0' + v % 10);
+	    v /= 10;
+	} while (v > 0);
+	if (value < 0) {
+	    chars[--k] = '-';
+	}
+	start = k;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+	FontMetrics fm = getFontMetrics(getFont());
+	return new Dimension(fm.charWidth('0') * MAXCHARS, fm.getHeight());
+    }
+
+    @Override
+    public Dimension getMaximumSize() {
+	return getPreferredSize();
+    }
+
+    @Override
+    protected void paintComponent(final Graphics g) {
+	if (hints != null) {
+	    ((Graphics2D) g).addRenderingHints(hints);
+	}
+	g.setFont(getFont());
+	g.setColor(getForeground());
+	FontMetrics fm = g.getFontMetrics();
+	int len = MAXCHARS - start;
+	g.drawChars(chars, start, len,
+		    (getWidth() - fm.charsWidth(chars, start, len)) / 2,
+		    (getHeight() - fm.getHeight()) / 2 + fm.getAscent());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for the rendered board being brought up to
+ * date with a snapshot.
+ */
+@Name("uk.co.petertribble.jattack.Paint")
+@Label("Paint")
+@Category("Jattack")
+@Description("The board being drawn from a snapshot")
+@StackTrace(false)
+final class PaintEvent extends jdk.jfr.Event {
+
+    /**
+     * The type of this event, for checking whether it's being recorded
+     * without creating an event.
+     */
+    static final EventType TYPE = EventType.getEventType(PaintEvent.class);
+
+    /**
+     * The number of cells drawn.
+     */
+    @Label("Cells Drawn")
+    int cells;
+    /**
+     * Whether the whole board was drawn from scratch.
+     */
+    @Label("Full")
+    boolean full;
+    /**
+     * Whether the board was scrolled up.
+     */
+    @Label("Scrolled")
+    boolean scrolled;
+}
@@ -0,0 +1,199 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Figures on how smoothly the game is running, for the performance
+ * display: how many ticks the game clock runs each second, the time
+ * between frames, how far the game loop fell behind its schedule, and
+ * how much the garbage collector has run. Frames are counted on the
+ * thread that draws them, and once a second the figures for the second
+ * just gone are worked out, without allocating anything. The figures
+ * may then be read from any thread.
+ */
+final class PerfStats {
+
+    /**
+     * The period the figures cover, in nanoseconds.
+     */
+    private static final long PERIOD = 1_000_000_000L;
+
+    /**
+     * The times between frames in the current period.
+     */
+    private final Histogram frames = new Histogram();
+    /**
+     * The garbage collectors in this JVM.
+     */
+    private final GarbageCollectorMXBean[] collectors;
+    /**
+     * When the current period and the last frame started, 0 if nothing
+     * has been counted yet.
+     */
+    private long start;
+    private long lastframe;
+    /**
+     * The count of ticks, and the garbage collectors' counts and times,
+     * at the start of the current period.
+     */
+    private long startticks;
+    private long startgcs;
+    private long startgctime;
+    /**
+     * The furthest behind schedule the loop has been this period.
+     */
+    private long maxlate;
+    /**
+     * The figures for the last complete period.
+     */
+    private volatile int tps;
+    private volatile int frame50;
+    private volatile int frame99;
+    private volatile int lag;
+    private volatile int gcs;
+    private volatile int gctime;
+
+    /**
+     * Create a PerfStats.
+     */
+    PerfStats() {
+	collectors = ManagementFactory.getGarbageCollectorMXBeans()
+	    .toArray(new GarbageCollectorMXBean[0]);
+    }
+
+    /**
+     * Start counting again from scratch, as if no frames had been seen.
+     */
+    void reset() {
+	start = 0L;
+    }
+
+    /**
+     * Count a frame, and if a period has finished, work out its figures.
+     *
+     * @param now the time the frame was drawn, from System.nanoTime
+     * @param nticks the number of ticks the game clock has run
+     * @param late the furthest behind schedule the loop has been since
+     * the last frame, in nanoseconds
+     *
+     * @return true if there are new figures
+     */
+    boolean frame(final long now, final long nticks, final long late) {
+	if (start == 0L) {
+	    begin(now, nticks);
+	    return false;
+	}
+	frames.add(now - lastframe);
+	lastframe = now;
+	maxlate = Math.max(maxlate, late);
+	long elapsed = now - start;
+	if (elapsed < PERIOD) {
+	    return false;
+	}
+	tps = (int) ((nticks - startticks) * PERIOD / elapsed);
+	frame50 = (int) (frames.percentile(50.0) / 1000);
+	frame99 = (int) (frames.percentile(99.0) / 1000);
+	lag = (int) (maxlate / 1000);
+	long oldgcs = startgcs;
+	long oldgctime = startgctime;
+	begin(now, nticks);
+	gcs = (int) (startgcs - oldgcs);
+	gctime = (int) (startgctime - oldgctime);
+	return true;
+    }
+
+    /*
+     * Start a new period.
+     */
+    private void begin(final long now, final long nticks) {
+	start = now;
+	lastframe = now;
+	startticks = nticks;
+	maxlate = 0L;
+	frames.clear();
+	startgcs = 0L;
+	startgctime = 0L;
+	for (GarbageCollectorMXBean gc : collectors) {
+	    // either may be -1 if the collector doesn't keep it
+	    startgcs += Math.max(0L, gc.getCollectionCount());
+	    startgctime += Math.max(0L, gc.getCollectionTime());
+	}
+    }
+
+    /**
+     * Get the rate the game clock ran at in the last period.
+     *
+     * @return the number of ticks run per second
+     */
+    int getTicksPerSecond() {
+	return tps;
+    }
+
+    /**
+     * Get the median time between frames in the last period.
+     *
+     * @return the median frame time, in microseconds
+     */
+    int getFrameMedian() {
+	return frame50;
+    }
+
+    /**
+     * Get the 99th percentile of the time between frames in the last
+     * period.
+     *
+     * @return the 99th percentile frame time, in microseconds
+     */
+    int getFrame99() {
+	return frame99;
+    }
+
+    /**
+     * Get the furthest the game loop fell behind its schedule in the last
+     * period.
+     *
+     * @return the most the loop was behind, in microseconds
+     */
+    int getLag() {
+	return lag;
+    }
+
+    /**
+     * Get the number of garbage collections in the last period.
+     *
+     * @return the number of collections
+     */
+    int getCollections() {
+	return gcs;
+    }
+
+    /**
+     * Get the time spent collecting garbage in the last period.
+     *
+     * @return the collection time, in milliseconds
+     */
+    int getCollectionTime() {
+	return gctime;
+    }
+}
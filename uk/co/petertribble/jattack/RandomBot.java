@@ -0,0 +1,74 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * A bot that makes a random swap every so often. A baseline that any
+ * real strategy ought to beat. The swaps depend only on the seed of the
+ * game, so games are repeatable.
+ */
+public final class RandomBot implements Bot {
+
+    /**
+     * The default number of ticks between moves.
+     */
+    public static final int DEFAULT_INTERVAL = 250;
+
+    /**
+     * The number of ticks between moves.
+     */
+    private final int interval;
+    /**
+     * The source of moves.
+     */
+    private final SplitMix random = new SplitMix(0L);
+
+    /**
+     * Create a bot that moves at the default rate.
+     */
+    public RandomBot() {
+	this(DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Create a bot that moves at the given rate.
+     *
+     * @param ninterval the number of ticks between moves
+     */
+    public RandomBot(final int ninterval) {
+	interval = ninterval;
+    }
+
+    @Override
+    public void newGame(final GameEngine engine) {
+	random.setState(engine.getSeed());
+    }
+
+    @Override
+    public void play(final GameEngine engine) {
+	if (engine.getTicks() % interval == 0) {
+	    int nrows = engine.getRows();
+	    int i = random.nextInt(engine.getColumns() - 1);
+	    int n = random.nextInt(nrows - 1) + 1;
+	    engine.swap(i, i + 1, (engine.getToprow() + n) % nrows);
+	}
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * A record of a game, from which it can be replayed exactly. A game is
+ * determined by its size and seed, and by what the player did and when,
+ * so the recording holds those and a stream of events, each tagged with
+ * the tick of the game clock it happened on. Each event starts with a
+ * variable length number holding the ticks since the previous event
+ * shifted up three bits, with the kind of event in the bottom three
+ * bits; a swap is followed by the cell it was made at, garbage by the
+ * number of rows, and a step by nothing.
+ *
+ * Every KEYFRAME_TICKS ticks, and at the start, the complete state of
+ * the game is recorded as a keyframe event, so that a replay can jump
+ * to any point by starting at the keyframe before it, rather than
+ * running the whole game from the start.
+ */
+public final class Recording {
+
+    /**
+     * The number of ticks between keyframes.
+     */
+    static final long KEYFRAME_TICKS = 10_000L;
+    /**
+     * A swap with the cell to the right.
+     */
+    static final int SWAP_RIGHT = 0;
+    /**
+     * A swap with the cell to the left.
+     */
+    static final int SWAP_LEFT = 1;
+    /**
+     * A step made without waiting for the clock.
+     */
+    static final int STEP = 2;
+    /**
+     * The complete state of the game.
+     */
+    static final int KEYFRAME = 3;
+    /**
+     * Rows of garbage sent by an opponent.
+     */
+    static final int GARBAGE = 4;
+
+    /**
+     * Identifies a recording file.
+     */
+    private static final int MAGIC = 0x4a415452;
+    /**
+     * The version of the recording file format.
+     */
+    private static final int VERSION = 4;
+
+    /**
+     * The number of columns in the game.
+     */
+    private final int ncolumns;
+    /**
+     * The number of rows in the game.
+     */
+    private final int nrows;
+    /**
+     * The seed the game was started with.
+     */
+    private final long seed;
+    /**
+     * The tick the recording ends on.
+     */
+    private long end;
+    /**
+     * The stream of events.
+     */
+    private final Buffer data = new Buffer();
+    /**
+     * The tick of the most recent event.
+     */
+    private long lasttick;
+    /**
+     * For each keyframe, its tick, the tick of the event before it, and
+     * its offset in the stream.
+     */
+    private long[] keyticks = new long[16];
+    private long[] keyprevs = new long[16];
+    private int[] keyoffsets = new int[16];
+    private int nkeys;
+    /**
+     * Somewhere to write a keyframe before it is added to the stream.
+     */
+    private final Buffer scratch = new Buffer();
+    private final DataOutputStream scratchout = new DataOutputStream(scratch);
+
+    /*
+     * A ByteArrayOutputStream whose contents can be read in place.
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+	byte[] array() {
+	    return buf;
+	}
+    }
+
+    /**
+     * Start a recording.
+     *
+     * @param nncolumns the number of columns in the game
+     * @param nnrows the number of rows in the game
+     * @param nseed the seed the game was started with
+     */
+    Recording(final int nncolumns, final int nnrows, final long nseed) {
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	seed = nseed;
+    }
+
+    /**
+     * Record a swap.
+     *
+     * @param tick the tick the swap was made on
+     * @param colclick the column of the first cell
+     * @param colnew the column of the second cell
+     * @param row the row containing both cells
+     */
+    void swap(final long tick, final int colclick, final int colnew,
+	      final int row) {
+	event(tick, colclick < colnew ? SWAP_RIGHT : SWAP_LEFT);
+	putVarLong((long) row * ncolumns + Math.min(colclick, colnew));
+    }
+
+    /**
+     * Record a step made without waiting for the clock.
+     *
+     * @param tick the tick the step was made on
+     */
+    void step(final long tick) {
+	event(tick, STEP);
+    }
+
+    /**
+     * Record rows of garbage being pushed onto the board.
+     *
+     * @param tick the tick the garbage arrived on
+     * @param nrows the number of rows of garbage
+     */
+    void garbage(final long tick, final int nrows) {
+	event(tick, GARBAGE);
+	putVarLong(nrows);
+    }
+
+    /**
+     * Record the complete state of a game.
+     *
+     * @param tick the current tick
+     * @param engine the game being recorded
+     */
+    void keyframe(final long tick, final GameEngine engine) {
+	scratch.reset();
+	try {
+	    engine.saveState(scratchout);
+	} catch (IOException ioe) {
+	    throw new UncheckedIOException(ioe);
+	}
+	addKey(tick, lasttick, data.size());
+	event(tick, KEYFRAME);
+	putVarLong(scratch.size());
+	data.write(scratch.array(), 0, scratch.size());
+    }
+
+    private void addKey(final long tick, final long prev, final int offset) {
+	if (nkeys == keyticks.length) {
+	    keyticks = Arrays.copyOf(keyticks, 2 * nkeys);
+	    keyprevs = Arrays.copyOf(keyprevs, 2 * nkeys);
+	    keyoffsets = Arrays.copyOf(keyoffsets, 2 * nkeys);
+	}
+	keyticks[nkeys] = tick;
+	keyprevs[nkeys] = prev;
+	keyoffsets[nkeys] = offset;
+	nkeys++;
+    }
+
+    /**
+     * Set the tick the recording ends on.
+     *
+     * @param tick the last tick of the game
+     */
+    void setEnd(final long tick) {
+	end = tick;
+    }
+
+    private void event(final long tick, final int kind) {
+	putVarLong((tick - lasttick) << 3 | kind);
+	lasttick = tick;
+    }
+
+    /*
+     * Write a non-negative number seven bits at a time, low bits first,
+     * with the top bit of each byte set if more follow.
+     */
+    private void putVarLong(final long v) {
+	long x = v;
+	while ((x & ~0x7fL) != 0) {
+	    data.write((int) (x & 0x7f) | 0x80);
+	    x >>>= 7;
+	}
+	data.write((int) x);
+    }
+
+    /**
+     * Get the number of columns in the recorded game.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+	return ncolumns;
+    }
+
+    /**
+     * Get the number of rows in the recorded game.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+	return nrows;
+    }
+
+    /**
+     * Get the seed the recorded game was started with.
+     *
+     * @return the seed of the recorded game
+     */
+    public long getSeed() {
+	return seed;
+    }
+
+    /**
+     * Get the length of the recording.
+     *
+     * @return the tick the recording ends on
+     */
+    public long getTicks() {
+	return end;
+    }
+
+    /**
+     * Get the size of the stream of events.
+     *
+     * @return the number of bytes of events
+     */
+    public int getSize() {
+	return data.size();
+    }
+
+    /**
+     * Write the recording out.
+     *
+     * @param out where to write the recording
+     *
+     * @throws IOException if the recording can't be written
+     */
+    public void write(final OutputStream out) throws IOException {
+	DataOutputStream dout = new DataOutputStream(out);
+	dout.writeInt(MAGIC);
+	dout.writeByte(VERSION);
+	dout.writeInt(ncolumns);
+	dout.writeInt(nrows);
+	dout.writeLong(seed);
+	dout.writeLong(end);
+	dout.writeInt(data.size());
+	dout.write(data.array(), 0, data.size());
+	dout.flush();
+    }
+
+    /**
+     * Read a recording written by write. The board must be at least as
+     * big as the game allows, every event must lie within the stream,
+     * and every keyframe must hold a state the game can carry on from,
+     * so that a damaged recording is refused here rather than failing
+     * part way through a replay.
+     *
+     * @param in where to read the recording from
+     *
+     * @return the recording
+     *
+     * @throws IOException if a recording can't be read, or is truncated
+     * or corrupt
+     */
+    public static Recording read(final InputStream in) throws IOException {
+	try {
+	    return read(new DataInputStream(in));
+	} catch (EOFException eofe) {
+	    throw new IOException("Truncated recording", eofe);
+	}
+    }
+
+    /*
+     * Read a recording, leaving a short read to the caller to report.
+     */
+    private static Recording read(final DataInputStream din)
+	    throws IOException {
+	if (din.readInt() != MAGIC || din.readByte() != VERSION) {
+	    throw new IOException("Not a jattack recording");
+	}
+	int ncolumns = din.readInt();
+	int nrows = din.readInt();
+	if (ncolumns < GameEngine.MIN_COLUMNS
+		|| nrows < GameEngine.MIN_ROWS
+		|| (long) ncolumns * nrows
+			> Integer.MAX_VALUE - GameEngine.STATE_BYTES) {
+	    throw new IOException("Invalid board size in recording");
+	}
+	Recording rec = new Recording(ncolumns, nrows, din.readLong());
+	rec.end = din.readLong();
+	int length = din.readInt();
+	if (length < 0) {
+	    throw new IOException("Corrupt recording");
+	}
+	// copied a piece at a time, so that a bogus length runs out of
+	// input rather than memory
+	byte[] events = new byte[Math.min(length, 8192)];
+	for (int left = length; left > 0; left -= events.length) {
+	    int n = Math.min(left, events.length);
+	    din.readFully(events, 0, n);
+	    rec.data.write(events, 0, n);
+	}
+	// find the keyframes, checking that each can be loaded
+	int statelength = GameEngine.STATE_BYTES + ncolumns * nrows;
+	GameEngine engine = null;
+	Cursor c = rec.new Cursor(0, 0L);
+	try {
+	    while (c.next()) {
+		if (c.kind() == KEYFRAME) {
+		    if (c.length != statelength
+			    || c.length > rec.data.size() - c.start) {
+			throw new IOException("Corrupt keyframe in recording");
+		    }
+		    if (engine == null) {
+			engine = new GameEngine(ncolumns, nrows);
+		    }
+		    engine.loadState(c.state());
+		    rec.addKey(c.tick(), rec.lasttick, c.offset());
+		} else if (c.kind() > GARBAGE) {
+		    throw new IOException("Corrupt event in recording");
+		}
+		rec.lasttick = c.tick();
+	    }
+	} catch (IndexOutOfBoundsException ex) {
+	    throw new IOException("Truncated event in recording", ex);
+	}
+	if (rec.nkeys == 0) {
+	    throw new IOException("No keyframes in recording");
+	}
+	return rec;
+    }
+
+    /**
+     * Find the last keyframe at or before a tick.
+     *
+     * @param tick the tick to look for
+     *
+     * @return a cursor on the keyframe, ready for next to read it
+     */
+    Cursor keyframeBefore(final long tick) {
+	int lo = 0;
+	int hi = nkeys - 1;
+	while (lo < hi) {
+	    int mid = (lo + hi + 1) >>> 1;
+	    if (keyticks[mid] <= tick) {
+		lo = mid;
+	    } else {
+		hi = mid - 1;
+	    }
+	}
+	return new Cursor(keyoffsets[lo], keyprevs[lo]);
+    }
+
+    /**
+     * Reads events from the stream, one at a time.
+     */
+    final class Cursor {
+	/**
+	 * The offset of the next event.
+	 */
+	private int pos;
+	/**
+	 * The offset of the current event.
+	 */
+	private int offset;
+	/**
+	 * The tick of the current event.
+	 */
+	private long tick;
+	/**
+	 * The kind of the current event, -1 if there are no more.
+	 */
+	private int kind = -1;
+	/**
+	 * The cell a swap was made at, as row * ncolumns + column.
+	 */
+	private int cell;
+	/**
+	 * The number of rows of garbage.
+	 */
+	private int garbage;
+	/**
+	 * The extent of a keyframe's state.
+	 */
+	private int start;
+	private int length;
+
+	Cursor(final int npos, final long ntick) {
+	    pos = npos;
+	    tick = ntick;
+	}
+
+	/**
+	 * Move on to the next event.
+	 *
+	 * @return false if there are no more events
+	 */
+	boolean next() {
+	    if (pos >= data.size()) {
+		kind = -1;
+		return false;
+	    }
+	    offset = pos;
+	    long header = getVarLong();
+	    tick += header >>> 3;
+	    kind = (int) (header & 7);
+	    if (kind == SWAP_RIGHT || kind == SWAP_LEFT) {
+		cell = (int) getVarLong();
+	    } else if (kind == GARBAGE) {
+		garbage = (int) getVarLong();
+	    } else if (kind == KEYFRAME) {
+		length = (int) getVarLong();
+		start = pos;
+		pos += length;
+	    }
+	    return true;
+	}
+
+	private long getVarLong() {
+	    byte[] buf = data.array();
+	    long v = 0L;
+	    int shift = 0;
+	    int b;
+	    do {
+		if (pos >= data.size() || shift >= Long.SIZE) {
+		    throw new IndexOutOfBoundsException("Truncated number");
+		}
+		b = buf[pos++];
+		v |= (long) (b & 0x7f) << shift;
+		shift += 7;
+	    } while ((b & 0x80) != 0);
+	    return v;
+	}
+
+	int kind() {
+	    return kind;
+	}
+
+	long tick() {
+	    return tick;
+	}
+
+	int offset() {
+	    return offset;
+	}
+
+	int column() {
+	    return cell % ncolumns;
+	}
+
+	int row() {
+	    return cell / ncolumns;
+	}
+
+	int garbage() {
+	    return garbage;
+	}
+
+	/**
+	 * Get the state held in the current keyframe.
+	 *
+	 * @return the state of the game, for GameEngine.loadState
+	 */
+	DataInput state() {
+	    return new DataInputStream(new ByteArrayInputStream(data.array(),
+							start, length));
+	}
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A game played on a GameServer, for a GamePanel to show. The server runs
+ * the game, and a thread of this client's own reads the deltas it sends
+ * into a copy of the board, publishing a snapshot after each read. Moves
+ * are sent straight to the server, which has the final say on whether
+ * they are made. It takes the place of the loop that would otherwise
+ * drive the game.
+ */
+final class RemoteGame implements Driver, Runnable {
+
+    /**
+     * The connection to the server.
+     */
+    private final SocketChannel channel;
+    /**
+     * The number of columns in the game.
+     */
+    private final int ncolumns;
+    /**
+     * The number of rows in the game.
+     */
+    private final int nrows;
+    /**
+     * What the server has sent and hasn't yet been applied.
+     */
+    private final ByteBuffer in;
+    /**
+     * Holds each message being sent. Only used while synchronized.
+     */
+    private final ByteBuffer out =
+	ByteBuffer.allocate(GameProtocol.MAX_CLIENT_MESSAGE);
+    /**
+     * The board, as the server has described it. Only used on the reader
+     * thread.
+     */
+    private final BoardSnapshot board;
+    /**
+     * Where the board is published, and who to tell when it has been.
+     */
+    private SnapshotExchange snapshots;
+    private Runnable listener;
+    /**
+     * The thread reading from the server, null if stopped.
+     */
+    private volatile Thread thread;
+
+    /*
+     * Create a game over a connection on which the server has started
+     * it.
+     */
+    private RemoteGame(final SocketChannel nchannel, final int nncolumns,
+		       final int nnrows, final ByteBuffer nin) {
+	channel = nchannel;
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	in = nin;
+	board = new BoardSnapshot(ncolumns, nrows);
+    }
+
+    /**
+     * Connect to a server and ask to play a game of the given size.
+     *
+     * @param address the address of the server
+     * @param ncolumns the desired number of columns
+     * @param nrows the desired number of rows
+     *
+     * @return the game, ready to be shown in a GamePanel
+     *
+     * @throws IOException if the server can't be reached, or won't
+     * play a game of that size
+     */
+    static RemoteGame connect(final InetSocketAddress address,
+			      final int ncolumns, final int nrows)
+	    throws IOException {
+	SocketChannel channel = SocketChannel.open(address);
+	try {
+	    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	    ByteBuffer msg = ByteBuffer.allocate(
+		GameProtocol.MAX_CLIENT_MESSAGE);
+	    GameProtocol.begin(msg, GameProtocol.JOIN);
+	    GameProtocol.putVarint(msg, ncolumns);
+	    GameProtocol.putVarint(msg, nrows);
+	    GameProtocol.end(msg);
+	    while (msg.hasRemaining()) {
+		channel.write(msg);
+	    }
+	    // the server closes the connection if it won't play
+	    ByteBuffer nin = ByteBuffer.allocate(
+		2 * GameProtocol.maxMessage(ncolumns, nrows));
+	    int end = GameProtocol.next(nin.flip());
+	    while (end < 0) {
+		nin.compact();
+		if (channel.read(nin) < 0) {
+		    throw new IOException("Server refused the game");
+		}
+		end = GameProtocol.next(nin.flip());
+	    }
+	    if (nin.get() != GameProtocol.START
+		    || GameProtocol.getVarint(nin, end) != ncolumns
+		    || GameProtocol.getVarint(nin, end) != nrows
+		    || nin.position() != end) {
+		throw new IOException("Bad reply from server");
+	    }
+	    nin.compact();
+	    return new RemoteGame(channel, ncolumns, nrows, nin);
+	} catch (IOException ioe) {
+	    channel.close();
+	    throw ioe;
+	}
+    }
+
+    /**
+     * Get the number of columns in the game.
+     *
+     * @return the number of columns
+     */
+    int getColumns() {
+	return ncolumns;
+    }
+
+    /**
+     * Get the number of rows in the game.
+     *
+     * @return the number of rows
+     */
+    int getRows() {
+	return nrows;
+    }
+
+    /**
+     * Say where to publish the board, before starting.
+     *
+     * @param nsnapshots where to publish the board
+     * @param nlistener told, on the reader thread, after each publish
+     *
+     * @return the Driver for the game
+     */
+    Driver join(final SnapshotExchange nsnapshots,
+		final Runnable nlistener) {
+	snapshots = nsnapshots;
+	listener = nlistener;
+	return this;
+    }
+
+    /**
+     * Ask the server for a new game.
+     *
+     * @param seed the seed for the cells in the new game
+     */
+    synchronized void newGame(final long seed) {
+	GameProtocol.begin(out, GameProtocol.NEW);
+	GameProtocol.putLong(out, seed);
+	send();
+    }
+
+    /**
+     * Ask the server to swap two neighbouring cells on the same row.
+     *
+     * @param colclick the column of the first cell
+     * @param colnew the column of the second cell
+     * @param row the row containing both cells
+     */
+    synchronized void swap(final int colclick, final int colnew,
+			   final int row) {
+	if (colclick < colnew) {
+	    GameProtocol.begin(out, GameProtocol.SWAP_RIGHT);
+	    GameProtocol.putVarint(out, row * ncolumns + colclick);
+	} else {
+	    GameProtocol.begin(out, GameProtocol.SWAP_LEFT);
+	    GameProtocol.putVarint(out, row * ncolumns + colnew);
+	}
+	send();
+    }
+
+    /**
+     * Ask the server to step the board up.
+     *
+     * @param nsteps the number of steps
+     */
+    synchronized void step(final int nsteps) {
+	GameProtocol.begin(out, GameProtocol.STEP);
+	GameProtocol.putVarint(out, nsteps);
+	send();
+    }
+
+    /*
+     * Send the message that has been written. If it can't be sent, the
+     * connection is closed, and the reader will find it has gone.
+     */
+    private void send() {
+	GameProtocol.end(out);
+	try {
+	    while (out.hasRemaining()) {
+		channel.write(out);
+	    }
+	} catch (IOException ioe) {
+	    close();
+	}
+    }
+
+    private void close() {
+	try {
+	    channel.close();
+	} catch (IOException ioe) {
+	    // it's gone anyway
+	}
+    }
+
+    /**
+     * Start reading from the server. Once stopped, the connection is
+     * closed, so it can't be started again.
+     */
+    @Override
+    public void start() {
+	if (thread == null && channel.isOpen()) {
+	    Thread t = new Thread(this, "jattack-client");
+	    t.setDaemon(true);
+	    thread = t;
+	    t.start();
+	}
+    }
+
+    /**
+     * Stop reading from the server, and close the connection.
+     */
+    @Override
+    public void stop() {
+	Thread t = thread;
+	thread = null;
+	close();
+	if (t != null && t != Thread.currentThread()) {
+	    boolean interrupted = false;
+	    while (t.isAlive()) {
+		try {
+		    t.join();
+		} catch (InterruptedException ie) {
+		    interrupted = true;
+		}
+	    }
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+    }
+
+    @Override
+    public boolean isRunning() {
+	return thread != null;
+    }
+
+    /**
+     * The server's loop isn't visible from here.
+     *
+     * @return 0
+     */
+    @Override
+    public long takeLateness() {
+	return 0L;
+    }
+
+    /*
+     * Read deltas from the server until the connection is closed, then
+     * show the game as over.
+     */
+    @Override
+    public void run() {
+	Thread me = Thread.currentThread();
+	try {
+	    // the server may have sent the first delta along with START
+	    int n = 0;
+	    while (n >= 0 && thread == me) {
+		in.flip();
+		apply();
+		in.compact();
+		snapshots.publish(board);
+		listener.run();
+		n = channel.read(in);
+	    }
+	} catch (IOException ioe) {
+	    // the connection has gone, or the server sent nonsense
+	}
+	close();
+	board.active = false;
+	snapshots.publish(board);
+	listener.run();
+	if (thread == me) {
+	    thread = null;
+	}
+    }
+
+    /*
+     * Apply every whole delta that has arrived.
+     */
+    private void apply() throws IOException {
+	for (int end = GameProtocol.next(in); end >= 0;
+	     end = GameProtocol.next(in)) {
+	    if (in.get() != GameProtocol.DELTA) {
+		throw new IOException("Unknown message");
+	    }
+	    GameProtocol.getDelta(in, end, board);
+	    if (in.position() != end) {
+		throw new IOException("Bad message");
+	    }
+	}
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Play back a Recording through a GameEngine, either a tick at a time
+ * alongside the game clock, or as fast as possible. A replay can jump to
+ * any tick, starting from the keyframe before it, so that the time
+ * taken doesn't depend on how far into the game the tick is.
+ */
+public final class Replay {
+
+    /**
+     * The recording being played.
+     */
+    private final Recording recording;
+    /**
+     * The engine the game is played back through.
+     */
+    private final GameEngine engine;
+    /**
+     * The next event to apply.
+     */
+    private Recording.Cursor cursor;
+
+    /**
+     * Create a headless replay of a recording.
+     *
+     * @param nrecording the recording to play
+     */
+    public Replay(final Recording nrecording) {
+	this(nrecording, new GameEngine(nrecording.getColumns(),
+					nrecording.getRows()));
+    }
+
+    /**
+     * Create a replay of a recording, played through the given engine,
+     * which must be the same size as the recorded game.
+     *
+     * @param nrecording the recording to play
+     * @param nengine the engine to play the recording through
+     */
+    public Replay(final Recording nrecording, final GameEngine nengine) {
+	if (nrecording.getColumns() != nengine.getColumns()
+		|| nrecording.getRows() != nengine.getRows()) {
+	    throw new IllegalArgumentException("Recording is the wrong size");
+	}
+	recording = nrecording;
+	engine = nengine;
+	seek(0L);
+    }
+
+    /**
+     * Get the engine the game is played back through.
+     *
+     * @return the GameEngine for the replay
+     */
+    public GameEngine getEngine() {
+	return engine;
+    }
+
+    /**
+     * Get the recording being played.
+     *
+     * @return the Recording for the replay
+     */
+    public Recording getRecording() {
+	return recording;
+    }
+
+    /**
+     * Check whether the replay has reached the end of the recording.
+     *
+     * @return true if there is no more to play
+     */
+    public boolean isFinished() {
+	return !engine.isActive() || engine.getTicks() >= recording.getTicks();
+    }
+
+    /**
+     * Play the given number of ticks, or up to the end if that comes
+     * first.
+     *
+     * @param nticks the number of ticks to play
+     */
+    public void advance(final int nticks) {
+	for (int k = 0; k < nticks && !isFinished(); k++) {
+	    engine.tick();
+	    applyDue();
+	}
+    }
+
+    /**
+     * Play the rest of the recording as fast as possible.
+     */
+    public void runToEnd() {
+	while (!isFinished()) {
+	    engine.tick();
+	    applyDue();
+	}
+    }
+
+    /**
+     * Jump to the given tick, or as near as the recording allows.
+     *
+     * @param tick the tick to jump to
+     */
+    public void seek(final long tick) {
+	cursor = recording.keyframeBefore(tick);
+	cursor.next();
+	try {
+	    engine.loadState(cursor.state());
+	} catch (IOException ioe) {
+	    throw new UncheckedIOException(ioe);
+	}
+	cursor.next();
+	applyDue();
+	while (engine.getTicks() < tick && !isFinished()) {
+	    engine.tick();
+	    applyDue();
+	}
+    }
+
+    /*
+     * Apply everything that happened up to and including the current
+     * tick. Keyframes are skipped, the game having got to the same state
+     * by itself.
+     */
+    private void applyDue() {
+	while (cursor.kind() >= 0 && cursor.tick() <= engine.getTicks()) {
+	    int kind = cursor.kind();
+	    if (kind == Recording.SWAP_RIGHT) {
+		engine.swap(cursor.column(), cursor.column() + 1, cursor.row());
+	    } else if (kind == Recording.SWAP_LEFT) {
+		engine.swap(cursor.column() + 1, cursor.column(), cursor.row());
+	    } else if (kind == Recording.STEP) {
+		engine.step();
+	    } else if (kind == Recording.GARBAGE) {
+		engine.addGarbage(cursor.garbage());
+	    }
+	    cursor.next();
+	}
+    }
+
+    /**
+     * Replay a recorded game headless, as fast as possible, and report
+     * how it ended. With -t tick, jump to the given tick instead.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(final String[] args) {
+	long target = -1L;
+	int i = 0;
+	if (args.length > 1 && "-t".equals(args[0])) {
+	    try {
+		target = Long.parseLong(args[1]);
+	    } catch (NumberFormatException ex) {
+		bailOut("Invalid tick!");
+	    }
+	    i = 2;
+	}
+	if (i != args.length - 1) {
+	    bailOut("Usage: Replay [-t tick] file");
+	}
+	Recording rec = null;
+	try (InputStream in = new FileInputStream(args[i])) {
+	    rec = Recording.read(in);
+	} catch (IOException ioe) {
+	    bailOut("Unable to read recording: " + ioe.getMessage());
+	}
+	long start = System.nanoTime();
+	Replay replay = new Replay(rec);
+	if (target < 0) {
+	    replay.runToEnd();
+	} else {
+	    replay.seek(target);
+	}
+	long elapsed = System.nanoTime() - start;
+	GameEngine engine = replay.getEngine();
+	System.out.printf("%dx%d seed %d: tick %d of %d, level %d, score %d"
+			  + ", %s, in %.3f ms%n",
+			  rec.getColumns(), rec.getRows(), rec.getSeed(),
+			  engine.getTicks(), rec.getTicks(), engine.getLevel(),
+			  engine.getScore(),
+			  engine.isActive() ? "in progress" : "game over",
+			  elapsed / 1e6);
+    }
+
+    private static void bailOut(final String s) {
+	System.err.println(s); //NOPMD
+	System.exit(1);
+    }
+}
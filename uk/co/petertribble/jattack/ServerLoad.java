@@ -0,0 +1,363 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.function.Consumer;
+
+/**
+ * Play many sessions on a GameServer at once, from a single thread, to
+ * measure how the server copes. Each client starts a game with a seed of
+ * its own, makes random swaps at a steady rate, and starts a new game
+ * whenever its game ends. Like a real client, it keeps its own copy of
+ * the board up to date from the deltas the server sends, and the swaps
+ * are made on rows the board shows, so that they count.
+ */
+final class ServerLoad implements Runnable {
+
+    /**
+     * The default number of moves each client makes a second.
+     */
+    static final int DEFAULT_MOVES = 4;
+    /**
+     * The default length of a load test, in seconds.
+     */
+    static final int DEFAULT_SECONDS = 30;
+
+    /**
+     * The server to connect to.
+     */
+    private final InetSocketAddress address;
+    /**
+     * The clients.
+     */
+    private final Client[] clients;
+    /**
+     * The size of each client's board.
+     */
+    private final int ncolumns;
+    private final int nrows;
+    /**
+     * The time between each client's moves, in nanoseconds, 0 for none.
+     */
+    private final long period;
+    /**
+     * Watches the clients for anything the server has sent.
+     */
+    private Selector selector;
+    /**
+     * Reads from a client the server has sent something to.
+     */
+    private final Consumer<SelectionKey> ready = this::ready;
+    /**
+     * Chooses the moves.
+     */
+    private final SplitMix random = new SplitMix(1L);
+    /**
+     * The thread running the clients, null if stopped.
+     */
+    private volatile Thread thread;
+    /**
+     * The figures for all the clients: bytes and deltas received, games
+     * started, and connections lost. Only updated on the client thread.
+     */
+    private long received;
+    private long deltas;
+    private long games;
+    private int lost;
+
+    /**
+     * Create a load test, with a number of clients, each playing a board
+     * of the given size.
+     *
+     * @param naddress the address of the server
+     * @param nclients the number of clients
+     * @param nncolumns the number of columns on each board
+     * @param nnrows the number of rows on each board
+     * @param moves the number of moves each client makes a second
+     */
+    ServerLoad(final InetSocketAddress naddress, final int nclients,
+	       final int nncolumns, final int nnrows, final int moves) {
+	address = naddress;
+	clients = new Client[nclients];
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	period = moves == 0 ? 0L : 1_000_000_000L / moves;
+    }
+
+    /**
+     * Connect all the clients, join a game with each, and start playing.
+     *
+     * @throws IOException if any of the clients can't connect
+     */
+    void start() throws IOException {
+	selector = Selector.open();
+	long now = System.nanoTime();
+	for (int k = 0; k < clients.length; k++) {
+	    SocketChannel channel = SocketChannel.open(address);
+	    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	    channel.configureBlocking(false);
+	    Client c = new Client(channel, k);
+	    clients[k] = c;
+	    channel.register(selector, SelectionKey.OP_READ, c);
+	    // spread the moves out over the period
+	    c.nextmove = period == 0 ? Long.MAX_VALUE
+		: now + period * k / clients.length;
+	    GameProtocol.begin(c.out, GameProtocol.JOIN);
+	    GameProtocol.putVarint(c.out, ncolumns);
+	    GameProtocol.putVarint(c.out, nrows);
+	    GameProtocol.end(c.out);
+	    c.send();
+	}
+	Thread t = new Thread(this, "jattack-load");
+	t.setDaemon(true);
+	thread = t;
+	t.start();
+    }
+
+    /**
+     * Stop playing, and disconnect all the clients.
+     */
+    void stop() {
+	Thread t = thread;
+	thread = null;
+	if (t != null) {
+	    selector.wakeup();
+	    boolean interrupted = false;
+	    while (t.isAlive()) {
+		try {
+		    t.join();
+		} catch (InterruptedException ie) {
+		    interrupted = true;
+		}
+	    }
+	    if (interrupted) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+	for (Client c : clients) {
+	    if (c != null) {
+		c.close();
+	    }
+	}
+	try {
+	    selector.close();
+	} catch (IOException ioe) {
+	    // nothing more can be done with it
+	}
+    }
+
+    /**
+     * Print what the clients received. Only to be called once they have
+     * stopped.
+     *
+     * @param out where to print the figures
+     */
+    void report(final PrintStream out) {
+	out.printf("Clients received %d bytes in %d deltas, %.1f bytes"
+		   + " per delta, played %d games, lost %d connections%n",
+		   received, deltas,
+		   deltas == 0 ? 0.0 : (double) received / deltas, games,
+		   lost);
+    }
+
+    @Override
+    public void run() {
+	Thread me = Thread.currentThread();
+	long wait = Math.max(1L, (period == 0 ? GameLoop.FRAME_NANOS
+				  : Math.min(period, GameLoop.FRAME_NANOS))
+			     / 1_000_000L);
+	while (thread == me) {
+	    try {
+		selector.select(ready, wait);
+	    } catch (IOException ioe) {
+		break;
+	    }
+	    long now = System.nanoTime();
+	    for (Client c : clients) {
+		if (!c.closed) {
+		    c.play(now);
+		}
+	    }
+	}
+    }
+
+    /*
+     * Read from a client the server has sent something to.
+     */
+    private void ready(final SelectionKey key) {
+	Client c = (Client) key.attachment();
+	try {
+	    c.read();
+	} catch (IOException ioe) {
+	    lost++;
+	    c.close();
+	}
+    }
+
+    /*
+     * A connection to the server, playing one game after another.
+     */
+    private final class Client {
+	/**
+	 * The connection to the server.
+	 */
+	private final SocketChannel channel;
+	/**
+	 * The seed for the next game.
+	 */
+	private long seed;
+	/**
+	 * What the server has sent and hasn't yet been applied.
+	 */
+	private final ByteBuffer in;
+	/**
+	 * The message being sent, empty once it has all gone.
+	 */
+	private final ByteBuffer out =
+	    ByteBuffer.allocate(GameProtocol.MAX_CLIENT_MESSAGE);
+	/**
+	 * The board, as the server has described it.
+	 */
+	private final BoardSnapshot board;
+	/**
+	 * Whether the server has said the game is ready, and whether a new
+	 * game has been asked for that hasn't yet started.
+	 */
+	private boolean joined;
+	private boolean requested;
+	/**
+	 * When the next move is due, from System.nanoTime.
+	 */
+	private long nextmove;
+	/**
+	 * Set once the connection is lost.
+	 */
+	private boolean closed;
+
+	Client(final SocketChannel nchannel, final long nseed) {
+	    channel = nchannel;
+	    seed = nseed;
+	    in = ByteBuffer.allocate(
+		2 * GameProtocol.maxMessage(ncolumns, nrows));
+	    board = new BoardSnapshot(ncolumns, nrows);
+	}
+
+	/*
+	 * Read and apply whatever the server has sent.
+	 */
+	private void read() throws IOException {
+	    int n = channel.read(in);
+	    if (n < 0) {
+		throw new IOException("Server closed the connection");
+	    }
+	    received += n;
+	    in.flip();
+	    for (int end = GameProtocol.next(in); end >= 0;
+		 end = GameProtocol.next(in)) {
+		int type = in.get();
+		if (type == GameProtocol.DELTA) {
+		    GameProtocol.getDelta(in, end, board);
+		    deltas++;
+		} else if (type == GameProtocol.START) {
+		    GameProtocol.getVarint(in, end);
+		    GameProtocol.getVarint(in, end);
+		    joined = true;
+		} else {
+		    throw new IOException("Unknown message");
+		}
+		if (in.position() != end) {
+		    throw new IOException("Bad message");
+		}
+	    }
+	    in.compact();
+	}
+
+	/*
+	 * Start a game if there isn't one, or make a move if one is due.
+	 */
+	private void play(final long now) {
+	    if (!send() || !joined) {
+		return;
+	    }
+	    if (board.active) {
+		requested = false;
+	    } else if (!requested) {
+		newGame();
+	    }
+	    if (board.active && now - nextmove >= 0) {
+		nextmove += period;
+		// a swap on any row but the one coming into view
+		int j = (board.toprow + 1 + random.nextInt(nrows - 1)) % nrows;
+		int i = random.nextInt(ncolumns - 1);
+		GameProtocol.begin(out, GameProtocol.SWAP_RIGHT);
+		GameProtocol.putVarint(out, j * ncolumns + i);
+		GameProtocol.end(out);
+		send();
+	    }
+	}
+
+	/*
+	 * Ask for a new game.
+	 */
+	private void newGame() {
+	    requested = true;
+	    games++;
+	    GameProtocol.begin(out, GameProtocol.NEW);
+	    GameProtocol.putLong(out, seed);
+	    GameProtocol.end(out);
+	    seed += clients.length;
+	    send();
+	}
+
+	/*
+	 * Send whatever is left of the message being sent. Returns true
+	 * if it has all gone.
+	 */
+	private boolean send() {
+	    try {
+		channel.write(out);
+	    } catch (IOException ioe) {
+		lost++;
+		close();
+	    }
+	    return !closed && !out.hasRemaining();
+	}
+
+	private void close() {
+	    if (!closed) {
+		closed = true;
+		try {
+		    channel.close();
+		} catch (IOException ioe) {
+		    // it's gone anyway
+		}
+	    }
+	}
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+
+/**
+ * Drive any number of games from the one GameLoop thread, so that a
+ * window full of boards doesn't need a thread for each. Each game joins
+ * the loop and is given a Driver of its own, which it starts and stops
+ * as if it had a loop to itself. Once a frame, every running game is
+ * handed the same number of ticks in turn, so they all keep the same
+ * time, and then anything that needs to look at all the games together
+ * is run, before the next frame can start. When none of the games is
+ * running, the thread stops rather than running empty frames.
+ */
+final class SharedLoop {
+
+    /**
+     * The loop driving all the games.
+     */
+    private final GameLoop loop = new GameLoop(this::frame);
+    /**
+     * Held for the whole of each frame, so that nothing sees the games
+     * part way through one.
+     */
+    private final Object frameLock = new Object();
+    /**
+     * The games that have joined, replaced rather than changed so that
+     * the loop can go through them without a lock or an iterator.
+     */
+    private volatile Member[] members = new Member[0];
+    /**
+     * Run on the loop thread after the games each frame, may be null.
+     */
+    private final Runnable after;
+
+    /**
+     * Create a shared loop.
+     *
+     * @param nafter run on the loop thread at the end of each frame,
+     * after all the games, or null
+     */
+    SharedLoop(final Runnable nafter) {
+	after = nafter;
+    }
+
+    /**
+     * Add a game to the loop. The game doesn't run until its Driver is
+     * started.
+     *
+     * @param game told, on the loop thread, how many ticks to run
+     *
+     * @return the Driver for the game
+     */
+    Driver join(final IntConsumer game) {
+	Member m = new Member(game);
+	synchronized (frameLock) {
+	    Member[] nmembers = Arrays.copyOf(members, members.length + 1);
+	    nmembers[members.length] = m;
+	    members = nmembers;
+	}
+	return m;
+    }
+
+    /**
+     * Run something while no frame is in progress, so that it can change
+     * any of the games without a frame seeing them half changed. The
+     * games may be started and stopped from inside it.
+     *
+     * @param r what to run
+     */
+    void runBetweenFrames(final Runnable r) {
+	synchronized (frameLock) {
+	    r.run();
+	}
+    }
+
+    /**
+     * Stop the loop thread, waiting for any frame in progress to finish.
+     * It starts again when any of the games is next started.
+     */
+    void shutdown() {
+	loop.stop();
+    }
+
+    /*
+     * Run on the loop thread once a frame, to run the games.
+     */
+    private void frame(final int nticks) {
+	long late = loop.takeLateness();
+	synchronized (frameLock) {
+	    for (Member m : members) {
+		m.lateness.getAndAccumulate(late, Math::max);
+		if (m.running) {
+		    m.game.accept(nticks);
+		}
+	    }
+	    if (after != null) {
+		after.run();
+	    }
+	    // once every game has stopped, so does the thread, until one of
+	    // them is started again; as that happens under the lock it can't
+	    // be missed
+	    boolean idle = true;
+	    for (Member m : members) {
+		idle &= !m.running;
+	    }
+	    if (idle) {
+		loop.stop();
+	    }
+	}
+    }
+
+    /*
+     * A game run by the loop.
+     */
+    private final class Member implements Driver {
+	/**
+	 * Told how many ticks to run, once a frame, on the loop thread.
+	 */
+	private final IntConsumer game;
+	/**
+	 * Whether the game is being run. Only changed under the frame
+	 * lock, so once a game is stopped no frame can be running it.
+	 */
+	private volatile boolean running;
+	/**
+	 * The furthest behind schedule a frame has been since it was last
+	 * asked for.
+	 */
+	private final AtomicLong lateness = new AtomicLong();
+
+	Member(final IntConsumer ngame) {
+	    game = ngame;
+	}
+
+	@Override
+	public void start() {
+	    synchronized (frameLock) {
+		running = true;
+	    }
+	    loop.start();
+	}
+
+	@Override
+	public void stop() {
+	    synchronized (frameLock) {
+		running = false;
+	    }
+	}
+
+	@Override
+	public boolean isRunning() {
+	    return running;
+	}
+
+	@Override
+	public long takeLateness() {
+	    return lateness.getAndSet(0L);
+	}
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Play large numbers of headless games with a bot, over a range of
+ * difficulty settings, to see how the settings affect how long games
+ * last and how they score.
+ *
+ * The games are shared out in chunks between worker threads, each with
+ * its own engine and bot, so they scale with the number of cores. Each
+ * setting is summarised with fixed size histograms, and printed as soon
+ * as all its games are done, so memory stays flat however many games
+ * are played. Game n is started with the same seed for every setting,
+ * so settings are compared on the same games.
+ */
+public final class Simulator {
+
+    /**
+     * The number of games in each chunk of work.
+     */
+    private static final int CHUNK = 64;
+    /**
+     * The default number of games for each setting.
+     */
+    private static final int DEFAULT_GAMES = 1000;
+    /**
+     * The default longest game, in minutes of game time.
+     */
+    private static final int DEFAULT_MINUTES = 30;
+    /**
+     * The number of ticks in a minute.
+     */
+    private static final long MINUTE_TICKS = 60_000_000_000L
+	/ GameEngine.TICK_NANOS;
+
+    /**
+     * The number of columns in each game.
+     */
+    private final int ncolumns;
+    /**
+     * The number of rows in each game.
+     */
+    private final int nrows;
+    /**
+     * The type of board to use.
+     */
+    private final BoardType btype;
+    /**
+     * Makes a bot for each worker.
+     */
+    private final Supplier<Bot> bots;
+
+    /*
+     * The results for one setting.
+     */
+    private static final class Tally {
+	final Histogram scores = new Histogram();
+	final Histogram ticks = new Histogram();
+	final Histogram levels = new Histogram();
+	long capped;
+
+	void add(final GameEngine engine) {
+	    scores.add(engine.getScore());
+	    ticks.add(engine.getTicks());
+	    levels.add(engine.getLevel());
+	    if (engine.isActive()) {
+		capped++;
+	    }
+	}
+
+	void add(final Tally t) {
+	    scores.add(t.scores);
+	    ticks.add(t.ticks);
+	    levels.add(t.levels);
+	    capped += t.capped;
+	}
+
+	void clear() {
+	    scores.clear();
+	    ticks.clear();
+	    levels.clear();
+	    capped = 0;
+	}
+    }
+
+    /*
+     * The state of a single run over a set of settings.
+     */
+    private final class Sweep {
+	final List<Difficulty> settings;
+	final int games;
+	final long maxticks;
+	final long seed;
+	final PrintStream out;
+	final int chunksPerSetting;
+	final long nchunks;
+	final AtomicLong nextChunk = new AtomicLong();
+	final AtomicReference<RuntimeException> failure =
+	    new AtomicReference<>();
+	/*
+	 * The results for settings still being played, or waiting for
+	 * earlier settings to finish so they can be printed in order.
+	 * Guarded by this.
+	 */
+	final Tally[] tallies;
+	int nextPrint;
+
+	Sweep(final List<Difficulty> nsettings, final int ngames,
+	      final long nmaxticks, final long nseed,
+	      final PrintStream nout) {
+	    settings = nsettings;
+	    games = ngames;
+	    maxticks = nmaxticks;
+	    seed = nseed;
+	    out = nout;
+	    chunksPerSetting = (games + CHUNK - 1) / CHUNK;
+	    nchunks = (long) chunksPerSetting * settings.size();
+	    tallies = new Tally[settings.size()];
+	}
+
+	/*
+	 * Claim chunks of games and play them until there are none left.
+	 */
+	void work() {
+	    try {
+		GameEngine engine = new GameEngine(ncolumns, nrows, btype);
+		Bot bot = bots.get();
+		SplitMix seeds = new SplitMix(0L);
+		Tally local = new Tally();
+		long k = nextChunk.getAndIncrement();
+		while (k < nchunks) {
+		    int s = (int) (k / chunksPerSetting);
+		    int first = (int) (k % chunksPerSetting) * CHUNK;
+		    int last = Math.min(games, first + CHUNK);
+		    engine.setDifficulty(settings.get(s));
+		    for (int g = first; g < last; g++) {
+			seeds.setState(seed + g);
+			engine.newGame(seeds.nextLong());
+			bot.newGame(engine);
+			while (engine.isActive()
+			       && engine.getTicks() < maxticks) {
+			    bot.play(engine);
+			    engine.tick();
+			}
+			local.add(engine);
+		    }
+		    finish(s, local);
+		    local.clear();
+		    k = nextChunk.getAndIncrement();
+		}
+	    } catch (RuntimeException e) {
+		failure.compareAndSet(null, e);
+		// stop the other workers
+		nextChunk.set(nchunks);
+	    }
+	}
+
+	/*
+	 * Add the results of a chunk to those for its setting, and print
+	 * any settings that are now complete.
+	 */
+	synchronized void finish(final int s, final Tally local) {
+	    if (tallies[s] == null) {
+		tallies[s] = new Tally();
+	    }
+	    tallies[s].add(local);
+	    while (nextPrint < tallies.length && tallies[nextPrint] != null
+		   && tallies[nextPrint].scores.count() == games) {
+		print(settings.get(nextPrint), tallies[nextPrint]);
+		tallies[nextPrint] = null;
+		nextPrint++;
+	    }
+	}
+
+	void print(final Difficulty d, final Tally t) {
+	    out.printf("%d,%d,%d,%d,%d,%d,%.1f,%d,%d,%d,%d,"
+		       + "%.1f,%.1f,%.1f,%.1f,%.2f,%d%n",
+		       d.getStartDelay(), d.getDelayStep(), d.getStartRows(),
+		       d.getColours(), t.scores.count(), t.capped,
+		       t.scores.mean(), t.scores.percentile(10),
+		       t.scores.percentile(50), t.scores.percentile(90),
+		       t.scores.max(), seconds(t.ticks.mean()),
+		       seconds(t.ticks.percentile(10)),
+		       seconds(t.ticks.percentile(50)),
+		       seconds(t.ticks.percentile(90)), t.levels.mean(),
+		       t.levels.max());
+	    out.flush();
+	}
+    }
+
+    /**
+     * Create a simulator.
+     *
+     * @param nncolumns the number of columns in each game
+     * @param nnrows the number of rows in each game
+     * @param nbtype the type of board to store the cells in
+     * @param nbots makes the bot for each worker thread
+     */
+    public Simulator(final int nncolumns, final int nnrows,
+		     final BoardType nbtype, final Supplier<Bot> nbots) {
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	btype = nbtype;
+	bots = nbots;
+    }
+
+    private static double seconds(final double ticks) {
+	return ticks * GameEngine.TICK_NANOS / 1e9;
+    }
+
+    /**
+     * Play the given number of games at each setting, printing a line of
+     * comma separated results for each setting, in order, as soon as its
+     * games are done.
+     *
+     * @param settings the difficulty settings to try
+     * @param games the number of games to play at each setting
+     * @param maxticks the most ticks a game may last, games lasting
+     * longer being counted as capped
+     * @param seed the seed the game seeds are made from
+     * @param nthreads the number of worker threads
+     * @param out where to print the results
+     *
+     * @throws InterruptedException if interrupted waiting for the workers
+     */
+    public void run(final List<Difficulty> settings, final int games,
+		    final long maxticks, final long seed, final int nthreads,
+		    final PrintStream out) throws InterruptedException {
+	Sweep sweep = new Sweep(settings, games, maxticks, seed, out);
+	out.println("delay,step,rows,colours,games,capped,"
+		    + "score_mean,score_p10,score_p50,score_p90,score_max,"
+		    + "secs_mean,secs_p10,secs_p50,secs_p90,"
+		    + "level_mean,level_max");
+	Thread[] workers = new Thread[nthreads];
+	for (int t = 0; t < nthreads; t++) {
+	    workers[t] = new Thread(sweep::work, "jattack-sim-" + t);
+	    workers[t].start();
+	}
+	for (Thread worker : workers) {
+	    worker.join();
+	}
+	if (sweep.failure.get() != null) {
+	    throw sweep.failure.get();
+	}
+    }
+
+    /*
+     * Find a bot by name, or by the name of a class implementing Bot with
+     * a no argument constructor.
+     */
+    private static Supplier<Bot> findBot(final String name) {
+	if ("idle".equals(name)) {
+	    return () -> engine -> { };
+	} else if ("random".equals(name)) {
+	    return RandomBot::new;
+	} else if ("greedy".equals(name)) {
+	    return GreedyBot::new;
+	} else if ("auto".equals(name)) {
+	    return () -> new AutoPlayer(AutoPlayer.DEFAULT_DEPTH);
+	}
+	Class<? extends Bot> c;
+	try {
+	    c = Class.forName(name).asSubclass(Bot.class);
+	    c.getConstructor().newInstance();
+	} catch (ClassNotFoundException | ClassCastException
+		 | NoSuchMethodException | InstantiationException
+		 | IllegalAccessException | InvocationTargetException e) {
+	    return null;
+	}
+	return () -> {
+	    try {
+		return c.getConstructor().newInstance();
+	    } catch (NoSuchMethodException | InstantiationException
+		     | IllegalAccessException | InvocationTargetException e) {
+		throw new IllegalStateException(e);
+	    }
+	};
+    }
+
+    /*
+     * Parse a comma separated list of integers, at least min.
+     */
+    private static int[] parseList(final String s, final int min,
+				   final String what) {
+	String[] parts = s.split(",");
+	int[] values = new int[parts.length];
+	for (int k = 0; k < parts.length; k++) {
+	    try {
+		values[k] = Integer.parseInt(parts[k].trim());
+	    } catch (NumberFormatException ex) {
+		bailOut("Invalid " + what + "!");
+	    }
+	    if (values[k] < min) {
+		bailOut("Invalid " + what + "!");
+	    }
+	}
+	return values;
+    }
+
+    /**
+     * Run a balance simulation from the command line. Every combination of
+     * the given starting delays (-d), delay steps (-k), starting rows (-f)
+     * and colours (-n), each a comma separated list, is played -g times
+     * by the bot chosen with -p, one of idle, random, greedy, auto, or the
+     * name of a class implementing Bot. The board size and type are
+     * chosen with -c, -r and -b as for the game, the number of threads
+     * with -j, the longest game in minutes with -m, and the seed with -s.
+     *
+     * @param args the command line arguments
+     */
+    public static void main(final String[] args) {
+	int ncolumns = 6;
+	int nrows = 9;
+	BoardType btype = BoardType.ARRAY;
+	String botname = "greedy";
+	int nthreads = Runtime.getRuntime().availableProcessors();
+	int games = DEFAULT_GAMES;
+	int minutes = DEFAULT_MINUTES;
+	long seed = 0L;
+	int[] delays = {GameEngine.START_DELAY};
+	int[] steps = {Difficulty.DEFAULT.getDelayStep()};
+	int[] fills = {Difficulty.DEFAULT.getStartRows()};
+	int[] colours = {Difficulty.DEFAULT.getColours()};
+	int i = 0;
+	while (i < args.length) {
+	    String flag = args[i];
+	    ++i;
+	    if (i == args.length) {
+		bailOut("Expecting an argument to " + flag + "!");
+	    }
+	    String arg = args[i];
+	    ++i;
+	    if ("-c".equals(flag)) {
+		ncolumns = parseList(arg, 6, "columns")[0];
+	    } else if ("-r".equals(flag)) {
+		nrows = parseList(arg, 9, "rows")[0];
+	    } else if ("-b".equals(flag)) {
+		if ("bits".equals(arg)) {
+		    btype = BoardType.BITS;
+		} else if ("array".equals(arg)) {
+		    btype = BoardType.ARRAY;
+		} else {
+		    bailOut("Invalid board type!");
+		}
+	    } else if ("-p".equals(flag)) {
+		botname = arg;
+	    } else if ("-j".equals(flag)) {
+		nthreads = parseList(arg, 1, "thread count")[0];
+	    } else if ("-g".equals(flag)) {
+		games = parseList(arg, 1, "game count")[0];
+	    } else if ("-m".equals(flag)) {
+		minutes = parseList(arg, 1, "minutes")[0];
+	    } else if ("-s".equals(flag)) {
+		try {
+		    seed = Long.parseLong(arg);
+		} catch (NumberFormatException ex) {
+		    bailOut("Invalid seed!");
+		}
+	    } else if ("-d".equals(flag)) {
+		delays = parseList(arg, 1, "delays");
+	    } else if ("-k".equals(flag)) {
+		steps = parseList(arg, 0, "delay steps");
+	    } else if ("-f".equals(flag)) {
+		fills = parseList(arg, 2, "starting rows");
+	    } else if ("-n".equals(flag)) {
+		colours = parseList(arg, 2, "colours");
+	    } else {
+		bailOut("Usage: Simulator [-c columns] [-r rows] "
+			+ "[-b array|bits] [-p bot] [-j threads] [-g games] "
+			+ "[-m minutes] [-s seed] [-d delays] [-k steps] "
+			+ "[-f rows] [-n colours]");
+	    }
+	}
+	if (btype == BoardType.BITS && ncolumns > BitBoard.MAX_COLUMNS) {
+	    bailOut("Too many columns for -b bits!");
+	}
+	Supplier<Bot> bots = findBot(botname);
+	if (bots == null) {
+	    bailOut("Unknown bot " + botname + "!");
+	}
+	List<Difficulty> settings = new ArrayList<>();
+	for (int delay : delays) {
+	    for (int step : steps) {
+		for (int fill : fills) {
+		    for (int ncolours : colours) {
+			if (ncolours > GameEngine.NCOLOURS) {
+			    bailOut("Too many colours!");
+			}
+			if (fill > nrows - 2) {
+			    bailOut("Too many starting rows!");
+			}
+			settings.add(new Difficulty(delay, step, fill,
+						    ncolours));
+		    }
+		}
+	    }
+	}
+	try {
+	    new Simulator(ncolumns, nrows, btype, bots).run(settings, games,
+				minutes * MINUTE_TICKS, seed, nthreads,
+				System.out);
+	} catch (InterruptedException ie) {
+	    bailOut("Interrupted!");
+	}
+    }
+
+    private static void bailOut(final String s) {
+	System.err.println(s); //NOPMD
+	System.exit(1);
+    }
+}
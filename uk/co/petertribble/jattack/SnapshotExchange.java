@@ -0,0 +1,108 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hand snapshots from a single writer to a single reader without
+ * locking, using three buffers. The writer fills its back buffer and
+ * publishes it, swapping it for the one waiting; the reader swaps its
+ * front buffer for the waiting one whenever a fresh one has been
+ * published. Neither side ever waits for the other, and the reader
+ * always sees the most recently published snapshot in full.
+ */
+final class SnapshotExchange {
+
+    /**
+     * Marks the waiting buffer as not yet seen by the reader.
+     */
+    private static final int FRESH = 4;
+    /**
+     * The bits holding a buffer index.
+     */
+    private static final int INDEX = 3;
+
+    /**
+     * The three buffers.
+     */
+    private final BoardSnapshot[] buffers = new BoardSnapshot[3];
+    /**
+     * The index of the waiting buffer, plus FRESH if it has been published
+     * since the reader last took it.
+     */
+    private final AtomicInteger waiting = new AtomicInteger(1);
+    /**
+     * The index of the buffer the writer fills.
+     */
+    private int back;
+    /**
+     * The index of the buffer the reader draws from.
+     */
+    private int front = 2;
+
+    /**
+     * Create an exchange for snapshots of a board.
+     *
+     * @param ncolumns the number of columns on the board
+     * @param nrows the number of rows on the board
+     */
+    SnapshotExchange(final int ncolumns, final int nrows) {
+	for (int k = 0; k < buffers.length; k++) {
+	    buffers[k] = new BoardSnapshot(ncolumns, nrows);
+	}
+    }
+
+    /**
+     * Fill the back buffer from an engine and publish it. Only to be called
+     * by the writer.
+     *
+     * @param engine the engine to copy
+     */
+    void publish(final GameEngine engine) {
+	buffers[back].capture(engine);
+	back = waiting.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Fill the back buffer from another snapshot, such as one kept up to
+     * date from a server, and publish it. Only to be called by the writer.
+     *
+     * @param board the snapshot to copy
+     */
+    void publish(final BoardSnapshot board) {
+	buffers[back].copy(board);
+	back = waiting.getAndSet(back | FRESH) & INDEX;
+    }
+
+    /**
+     * Get the latest snapshot. Only to be called by the reader, and the
+     * snapshot returned remains valid until the next call.
+     *
+     * @return the most recently published snapshot
+     */
+    BoardSnapshot latest() {
+	if ((waiting.get() & FRESH) != 0) {
+	    front = waiting.getAndSet(front) & INDEX;
+	}
+	return buffers[front];
+    }
+}
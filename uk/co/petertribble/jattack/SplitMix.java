@@ -0,0 +1,105 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * A SplitMix64 generator, producing exactly the same values as a
+ * java.util.SplittableRandom created with the same seed, but whose state
+ * can be read and restored, so that a game can be saved part way through
+ * and carried on later.
+ */
+final class SplitMix {
+
+    /**
+     * The increment added to the state for each value.
+     */
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The state, advanced by GAMMA for each value.
+     */
+    private long state;
+
+    /**
+     * Create a generator.
+     *
+     * @param seed the initial state
+     */
+    SplitMix(final long seed) {
+	state = seed;
+    }
+
+    /**
+     * Get a random value from 0 up to, but not including, a bound.
+     *
+     * @param bound the upper bound, which must be positive
+     *
+     * @return the next value
+     */
+    int nextInt(final int bound) {
+	int r = mix32(state += GAMMA);
+	int m = bound - 1;
+	if ((bound & m) == 0) {
+	    return r & m;
+	}
+	// reject values from the incomplete range at the top
+	int u = r >>> 1;
+	while (u + m - (r = u % bound) < 0) {
+	    u = mix32(state += GAMMA) >>> 1;
+	}
+	return r;
+    }
+
+    /**
+     * Get a random value from the whole range of long.
+     *
+     * @return the next value
+     */
+    long nextLong() {
+	long z = state += GAMMA;
+	z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+	z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+	return z ^ (z >>> 31);
+    }
+
+    /**
+     * Get the state, to be restored later with setState.
+     *
+     * @return the current state
+     */
+    long getState() {
+	return state;
+    }
+
+    /**
+     * Restore the state.
+     *
+     * @param nstate a state previously returned by getState
+     */
+    void setState(final long nstate) {
+	state = nstate;
+    }
+
+    private static int mix32(final long seed) {
+	long z = (seed ^ (seed >>> 33)) * 0x62a9d9ed799705f5L;
+	return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+}
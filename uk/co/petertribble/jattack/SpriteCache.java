@@ -0,0 +1,206 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+
+package uk.co.petertribble.jattack;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.VolatileImage;
+
+/**
+ * A cache of pre-rendered cell images, so that painting the board is a
+ * series of image copies. There is an image for each colour in each of
+ * the normal, shaded, and highlighted variants. The images are held as
+ * VolatileImages where possible, so they can live in video memory, and
+ * are only rebuilt if the cell size or display scale changes, or if
+ * their contents are lost.
+ */
+final class SpriteCache {
+
+    /**
+     * The variant for a normal cell.
+     */
+    static final int NORMAL = 0;
+    /**
+     * The variant for a shaded cell, in the partially visible row.
+     */
+    static final int SHADED = 1;
+    /**
+     * The variant for a highlighted cell, with a border around it.
+     */
+    static final int HIGHLIGHT = 2;
+    /**
+     * The number of variants.
+     */
+    private static final int NVARIANTS = 3;
+
+    /**
+     * The colours of the cells.
+     */
+    private final Color[] colours;
+    /**
+     * The colour of the border around a highlighted cell.
+     */
+    private final Color hicolour;
+    /**
+     * The size of each cell, including a single pixel border.
+     */
+    private final int cellsize;
+    /**
+     * The configuration the images were built for.
+     */
+    private GraphicsConfiguration gconf;
+    /**
+     * The display scale the images were built for.
+     */
+    private double scalex;
+    private double scaley;
+    /**
+     * The images, indexed by variant and then colour.
+     */
+    private Image[][] tiles;
+
+    /**
+     * Create a SpriteCache. The images themselves are built the first
+     * time the cache is validated.
+     *
+     * @param ncolours the colours of the cells
+     * @param nhicolour the colour of the border around a highlighted cell
+     * @param ncellsize the size of each cell, including its border
+     */
+    SpriteCache(final Color[] ncolours, final Color nhicolour,
+		final int ncellsize) {
+	colours = ncolours.clone();
+	hicolour = nhicolour;
+	cellsize = ncellsize;
+    }
+
+    /**
+     * Make sure the images are ready to be drawn with the given
+     * configuration, rebuilding or restoring them if necessary. Should be
+     * called before drawing each frame, so doesn't allocate anything
+     * unless the images need rebuilding.
+     *
+     * @param gc the configuration of the destination being drawn to
+     */
+    void validate(final GraphicsConfiguration gc) {
+	// a configuration's scale is fixed, so its transform, which is a
+	// new object each time, only needs asking for when it changes
+	if (tiles == null || !gc.equals(gconf)) {
+	    AffineTransform t = gc.getDefaultTransform();
+	    gconf = gc;
+	    scalex = t.getScaleX();
+	    scaley = t.getScaleY();
+	    build();
+	    return;
+	}
+	for (int v = 0; v < NVARIANTS; v++) {
+	    for (int c = 1; c < colours.length; c++) {
+		if (tiles[v][c] instanceof VolatileImage) {
+		    int r = ((VolatileImage) tiles[v][c]).validate(gc);
+		    if (r == VolatileImage.IMAGE_INCOMPATIBLE) {
+			build();
+			return;
+		    } else if (r == VolatileImage.IMAGE_RESTORED) {
+			render(v, c);
+		    }
+		}
+	    }
+	}
+    }
+
+    /**
+     * Check whether any of the images lost their contents since they were
+     * last validated, in which case the frame just drawn needs drawing
+     * again.
+     *
+     * @return true if the contents of any image were lost
+     */
+    boolean contentsLost() {
+	for (int v = 0; v < NVARIANTS; v++) {
+	    for (int c = 1; c < colours.length; c++) {
+		if (tiles[v][c] instanceof VolatileImage
+			&& ((VolatileImage) tiles[v][c]).contentsLost()) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Get the image for a cell. Normal and shaded images are the size of
+     * the cell body, to be drawn inside the border; highlighted images
+     * include the border.
+     *
+     * @param colour the colour of the cell, from 1
+     * @param variant one of NORMAL, SHADED, or HIGHLIGHT
+     *
+     * @return the image for the cell
+     */
+    Image get(final int colour, final int variant) {
+	return tiles[variant][colour];
+    }
+
+    /*
+     * Create and draw all the images.
+     */
+    private void build() {
+	tiles = new Image[NVARIANTS][colours.length];
+	boolean accel = !GraphicsEnvironment.isHeadless();
+	for (int v = 0; v < NVARIANTS; v++) {
+	    int size = v == HIGHLIGHT ? cellsize : cellsize - 2;
+	    int w = (int) Math.ceil(size * scalex);
+	    int h = (int) Math.ceil(size * scaley);
+	    for (int c = 1; c < colours.length; c++) {
+		tiles[v][c] = accel
+		    ? gconf.createCompatibleVolatileImage(w, h,
+						    Transparency.OPAQUE)
+		    : gconf.createCompatibleImage(w, h, Transparency.OPAQUE);
+		render(v, c);
+	    }
+	}
+    }
+
+    /*
+     * Draw one image, at the display scale.
+     */
+    private void render(final int v, final int c) {
+	Graphics2D g2 = (Graphics2D) tiles[v][c].getGraphics();
+	g2.scale(scalex, scaley);
+	int cellp = cellsize - 2;
+	if (v == HIGHLIGHT) {
+	    g2.setColor(hicolour);
+	    g2.fillRect(0, 0, cellsize, cellsize);
+	    g2.setColor(colours[c]);
+	    g2.fill3DRect(1, 1, cellp, cellp, true);
+	} else {
+	    g2.setColor(v == SHADED ? colours[c].darker() : colours[c]);
+	    g2.fill3DRect(0, 0, cellp, cellp, true);
+	}
+	g2.dispose();
+    }
+}
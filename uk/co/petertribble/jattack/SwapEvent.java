@@ -0,0 +1,62 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a swap being made, including dropping the
+ * cells and clearing any runs that result.
+ */
+@Name("uk.co.petertribble.jattack.Swap")
+@Label("Swap")
+@Category("Jattack")
+@Description("Two cells being swapped, and the board settling")
+@StackTrace(false)
+final class SwapEvent extends jdk.jfr.Event {
+
+    /**
+     * The type of this event, for checking whether it's being recorded
+     * without creating an event.
+     */
+    static final EventType TYPE = EventType.getEventType(SwapEvent.class);
+
+    /**
+     * The column of the left cell.
+     */
+    @Label("Column")
+    int column;
+    /**
+     * The row of the cells.
+     */
+    @Label("Row")
+    int row;
+    /**
+     * The number of runs the swap cleared.
+     */
+    @Label("Runs")
+    int runs;
+}
@@ -0,0 +1,59 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A flight recorder event for a frame of the game loop, covering the
+ * ticks run in that frame.
+ */
+@Name("uk.co.petertribble.jattack.Tick")
+@Label("Tick")
+@Category("Jattack")
+@Description("The game loop running the ticks for a frame")
+@StackTrace(false)
+final class TickEvent extends jdk.jfr.Event {
+
+    /**
+     * The type of this event, for checking whether it's being recorded
+     * without creating an event.
+     */
+    static final EventType TYPE = EventType.getEventType(TickEvent.class);
+
+    /**
+     * The number of ticks run.
+     */
+    @Label("Ticks")
+    int ticks;
+    /**
+     * How long after it was due the frame started.
+     */
+    @Label("Late")
+    @Timespan(Timespan.NANOSECONDS)
+    long late;
+}
@@ -0,0 +1,87 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+/**
+ * A fixed size table of search results, keyed by a 64-bit board hash,
+ * that any number of threads may read and write without locking. Each
+ * slot holds the key xor'ed with the data, so that a slot torn by two
+ * threads writing at once simply fails to match, and is treated as
+ * empty. A new result always replaces whatever was in its slot.
+ */
+final class TranspositionTable {
+
+    /**
+     * The keys, each xor'ed with its data.
+     */
+    private final long[] keys;
+    /**
+     * The data, with the search depth in the top half and the value in
+     * the bottom half.
+     */
+    private final long[] data;
+    /**
+     * The mask to turn a hash into a slot.
+     */
+    private final int mask;
+
+    /**
+     * Create a table.
+     *
+     * @param bits the table holds 2 to the power bits entries
+     */
+    TranspositionTable(final int bits) {
+	keys = new long[1 << bits];
+	data = new long[1 << bits];
+	mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Look up the value of a position searched to a given depth.
+     *
+     * @param hash the hash of the position
+     * @param depth the depth of the search
+     *
+     * @return the value, or Integer.MIN_VALUE if it isn't in the table
+     */
+    int get(final long hash, final int depth) {
+	int slot = (int) hash & mask;
+	long d = data[slot];
+	if ((keys[slot] ^ d) == hash && (int) (d >>> 32) == depth) {
+	    return (int) d;
+	}
+	return Integer.MIN_VALUE;
+    }
+
+    /**
+     * Save the value of a position searched to a given depth.
+     *
+     * @param hash the hash of the position
+     * @param depth the depth of the search
+     * @param value the value of the position
+     */
+    void put(final long hash, final int depth, final int value) {
+	int slot = (int) hash & mask;
+	long d = ((long) depth << 32) | (value & 0xffffffffL);
+	data[slot] = d;
+	keys[slot] = hash ^ d;
+    }
+}
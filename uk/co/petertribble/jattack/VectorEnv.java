@@ -0,0 +1,229 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A set of headless games stepped together, for training agents. Each
+ * call to step applies one action to every board, runs the game clock
+ * on by a fixed number of ticks, and reports the reward, whether the
+ * game ended, and the cells of every board.
+ *
+ * The cells are written straight into a buffer supplied by the caller,
+ * ideally a direct ByteBuffer shared with the agent, one byte per cell
+ * holding 0 for empty or a colour from 1. Board b starts at index
+ * b * getObservationSize(), and its cells are laid out row by row as
+ * they're shown: the top visible row first, down to the partly visible
+ * row rising in at the bottom. Stepping allocates nothing.
+ *
+ * Action 0 does nothing. Action 1 + y * (columns - 1) + x swaps the
+ * cells in columns x and x + 1 of row y, counting rows as in the
+ * observation, for any row but the partly visible one.
+ *
+ * When a game ends, its board is restarted at once, so the cells
+ * reported are those of the new game; the done flag says that the
+ * reward was the last of the old one. The seed of each new game comes
+ * from a sequence started by the seed given, so runs are repeatable.
+ */
+public final class VectorEnv {
+
+    /**
+     * The default number of ticks the clock runs on for each step.
+     */
+    public static final int DEFAULT_TICKS = 50;
+
+    /**
+     * The games.
+     */
+    private final GameEngine[] engines;
+    /**
+     * The number of columns in each game.
+     */
+    private final int ncolumns;
+    /**
+     * The number of rows in each game.
+     */
+    private final int nrows;
+    /**
+     * The number of ticks the clock runs on for each step.
+     */
+    private final int ticks;
+    /**
+     * The source of seeds for new games.
+     */
+    private final SplitMix seeds;
+
+    /**
+     * Create a set of games at the default difficulty.
+     *
+     * @param nboards the number of games
+     * @param nncolumns the number of columns in each game
+     * @param nnrows the number of rows in each game
+     * @param seed the seed for the sequence of game seeds
+     */
+    public VectorEnv(final int nboards, final int nncolumns,
+		     final int nnrows, final long seed) {
+	this(nboards, nncolumns, nnrows, Difficulty.DEFAULT, DEFAULT_TICKS,
+	     seed);
+    }
+
+    /**
+     * Create a set of games.
+     *
+     * @param nboards the number of games
+     * @param nncolumns the number of columns in each game
+     * @param nnrows the number of rows in each game
+     * @param difficulty the difficulty of the games
+     * @param nticks the number of ticks the clock runs on for each step
+     * @param seed the seed for the sequence of game seeds
+     *
+     * @throws IllegalArgumentException if the difficulty doesn't suit
+     * the size of board, or the number of ticks isn't positive
+     */
+    public VectorEnv(final int nboards, final int nncolumns,
+		     final int nnrows, final Difficulty difficulty,
+		     final int nticks, final long seed) {
+	if (nticks < 1) {
+	    throw new IllegalArgumentException("Ticks must be positive");
+	}
+	ncolumns = nncolumns;
+	nrows = nnrows;
+	ticks = nticks;
+	seeds = new SplitMix(seed);
+	engines = new GameEngine[nboards];
+	for (int b = 0; b < nboards; b++) {
+	    engines[b] = new GameEngine(ncolumns, nrows);
+	    engines[b].setDifficulty(difficulty);
+	}
+    }
+
+    /**
+     * Get the number of games.
+     *
+     * @return the number of boards stepped together
+     */
+    public int getBoards() {
+	return engines.length;
+    }
+
+    /**
+     * Get the number of bytes each board takes in the observations.
+     *
+     * @return the number of cells on a board
+     */
+    public int getObservationSize() {
+	return ncolumns * nrows;
+    }
+
+    /**
+     * Get the number of possible actions, including doing nothing.
+     *
+     * @return the number of actions
+     */
+    public int getActions() {
+	return 1 + (ncolumns - 1) * (nrows - 1);
+    }
+
+    /**
+     * Start a new game on every board.
+     *
+     * @param obs where to write the cells of every board
+     */
+    public void reset(final ByteBuffer obs) {
+	checkBuffer(obs);
+	int size = getObservationSize();
+	for (int b = 0; b < engines.length; b++) {
+	    engines[b].newGame(seeds.nextLong());
+	    engines[b].copyCells(obs, b * size);
+	}
+    }
+
+    /**
+     * Apply an action to every board and run the clock on.
+     *
+     * @param actions the action for each board
+     * @param rewards set to the points scored on each board
+     * @param dones set for each board whose game ended, and so has been
+     * restarted
+     * @param obs where to write the cells of every board
+     *
+     * @throws IllegalArgumentException if an action is out of range, or
+     * an array or the buffer is too small
+     */
+    public void step(final int[] actions, final float[] rewards,
+		     final boolean[] dones, final ByteBuffer obs) {
+	int nboards = engines.length;
+	if (actions.length < nboards || rewards.length < nboards
+		|| dones.length < nboards) {
+	    throw new IllegalArgumentException("Arrays too small");
+	}
+	checkBuffer(obs);
+	int nactions = getActions();
+	for (int b = 0; b < nboards; b++) {
+	    if (actions[b] < 0 || actions[b] >= nactions) {
+		throw new IllegalArgumentException("Invalid action "
+						   + actions[b]);
+	    }
+	}
+	int size = getObservationSize();
+	for (int b = 0; b < nboards; b++) {
+	    GameEngine engine = engines[b];
+	    int action = actions[b];
+	    int before = engine.getScore();
+	    if (action > 0) {
+		int x = (action - 1) % (ncolumns - 1);
+		int y = (action - 1) / (ncolumns - 1);
+		engine.swap(x, x + 1, (engine.getToprow() + y + 1) % nrows);
+	    }
+	    for (int k = 0; k < ticks && engine.isActive(); k++) {
+		engine.tick();
+	    }
+	    rewards[b] = engine.getScore() - before;
+	    dones[b] = !engine.isActive();
+	    if (dones[b]) {
+		engine.newGame(seeds.nextLong());
+	    }
+	    engine.copyCells(obs, b * size);
+	}
+    }
+
+    /*
+     * Check there's room in the buffer for every board.
+     */
+    private void checkBuffer(final ByteBuffer obs) {
+	if (obs.limit() < engines.length * getObservationSize()) {
+	    throw new IllegalArgumentException("Buffer too small");
+	}
+    }
+
+    /**
+     * Get the engine running one of the games, for example to look at
+     * its score or level.
+     *
+     * @param b the board
+     *
+     * @return the GameEngine for board b
+     */
+    public GameEngine getEngine(final int b) {
+	return engines[b];
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * SPDX-License-Identifier: CDDL-1.0
+ *
+ * CDDL HEADER START
+ *
+ * This file and its contents are supplied under the terms of the
+ * Common Development and Distribution License ("CDDL"), version 1.0.
+ * You may only use this file in accordance with the terms of version
+ * 1.0 of the CDDL.
+ *
+ * A full copy of the text of the CDDL should have accompanied this
+ * source. A copy of the CDDL is also available via the Internet at
+ * http://www.illumos.org/license/CDDL.
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2025 Peter Tribble
+ *
+ */
+
+package uk.co.petertribble.jattack;
+
+import java.awt.GridLayout;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.swing.JPanel;
+
+/**
+ * A versus game, with several boards in one panel. Clearing more than
+ * one run at once sends rows of garbage to the next board still in the
+ * game, pushing its stack up, and the last board left in wins. The first
+ * board may be played with the mouse, and the rest are played by bots.
+ * All the boards are driven by a single SharedLoop, and painted when
+ * Swing asks, so no board needs a thread of its own and there can be
+ * dozens of them.
+ */
+public final class VersusPanel extends JPanel {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The loop driving all the boards.
+     */
+    private final transient SharedLoop shared = new SharedLoop(this::route);
+    /**
+     * The boards, null until they've all been created.
+     */
+    private volatile AttackPanel[] boards;
+    /**
+     * Whether the winner has been found. Only used on the loop thread, or
+     * between frames.
+     */
+    private boolean decided;
+
+    /**
+     * Create a VersusPanel.
+     *
+     * @param nboards the number of boards, at least two
+     * @param ncolumns the desired number of columns on each board
+     * @param nrows the desired number of rows on each board
+     * @param btype the type of board to store the cells in
+     * @param human true if the first board is to be played with the
+     * mouse, false for bots to play every board
+     *
+     * @throws IllegalArgumentException if there are fewer than two boards
+     */
+    public VersusPanel(final int nboards, final int ncolumns,
+		       final int nrows, final BoardType btype,
+		       final boolean human) {
+	if (nboards < 2) {
+	    throw new IllegalArgumentException("Need at least two boards");
+	}
+	int ncols = (int) Math.ceil(Math.sqrt(nboards));
+	setLayout(new GridLayout(0, ncols, 10, 10));
+	AttackPanel[] panels = new AttackPanel[nboards];
+	for (int k = 0; k < nboards; k++) {
+	    panels[k] = new AttackPanel(ncolumns, nrows, btype, shared);
+	    if (k > 0 || !human) {
+		panels[k].getGamePanel().setBot(new GreedyBot());
+	    }
+	    add(panels[k]);
+	}
+	boards = panels;
+	newGame();
+    }
+
+    /**
+     * Start a new game on every board at once.
+     */
+    public void newGame() {
+	newGame(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Start a new game on every board at once, with the given seed. Each
+     * board gets a different seed, counting up from the one given, so the
+     * boards don't all play out the same.
+     *
+     * @param seed the seed for the cells on the first board
+     */
+    public void newGame(final long seed) {
+	shared.runBetweenFrames(() -> {
+	    decided = false;
+	    for (int k = 0; k < boards.length; k++) {
+		boards[k].newGame(seed + k);
+	    }
+	});
+    }
+
+    /**
+     * Choose whether the first board plays itself.
+     *
+     * @param auto true to have an AutoPlayer play the first board
+     */
+    public void setAutoplay(final boolean auto) {
+	boards[0].setAutoplay(auto);
+    }
+
+    @Override
+    public void removeNotify() {
+	// stops each board, then the loop itself
+	super.removeNotify();
+	shared.shutdown();
+    }
+
+    /*
+     * Run on the loop thread at the end of each frame. Garbage earned on
+     * each board still in the game is sent to the next board round that
+     * is still in, and once only one board is left in, it has won.
+     */
+    private void route() {
+	AttackPanel[] panels = boards;
+	if (panels == null) {
+	    return;
+	}
+	int nboards = panels.length;
+	int left = 0;
+	int last = -1;
+	for (int k = 0; k < nboards; k++) {
+	    GamePanel gpanel = panels[k].getGamePanel();
+	    if (!gpanel.isRunning()) {
+		continue;
+	    }
+	    left++;
+	    last = k;
+	    int attack = gpanel.getEngine().takeAttack();
+	    if (attack > 0) {
+		for (int d = 1; d < nboards; d++) {
+		    GamePanel target = panels[(k + d) % nboards]
+			.getGamePanel();
+		    if (target.isRunning()) {
+			target.addGarbage(attack);
+			break;
+		    }
+		}
+	    }
+	}
+	if (!decided && left <= 1) {
+	    decided = true;
+	    if (left == 1) {
+		panels[last].getGamePanel().setStatus("Winner!");
+	    }
+	}
+    }
+}